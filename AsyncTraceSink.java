@@ -0,0 +1,85 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ *
+ * ASYNCTRACESINK.JAVA
+ *
+ * The AsyncTraceSink class hands trace lines to a background thread that writes
+ * them to a PrintStream, so the interpreter thread never waits on console I/O.
+ * Lines are queued in a bounded queue; if the writer falls behind, the
+ * interpreter blocks until there is room again rather than losing trace lines.
+ */
+
+public final class AsyncTraceSink implements TraceSink {
+    private static final int CAPACITY = 8192;
+    private static final String CLOSE = new String("close"); // Compared by identity
+
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final PrintStream out;
+    private final Thread writer;
+
+/**
+ * Creates the sink and starts its writer thread.
+ *
+ * @param out The stream the trace lines are written to.
+ */
+
+    public AsyncTraceSink(PrintStream out) {
+        this.out = out;
+        this.writer = new Thread(this::drain, "basic-trace-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void write(String line) {
+        try {
+            queue.put(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+/**
+ * Waits until every queued line has been written and stops the writer thread.
+ */
+
+    @Override
+    public void close() {
+        write(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+/**
+ * Body of the writer thread: takes lines off the queue in batches and writes
+ * them, flushing whenever the queue runs empty.
+ */
+
+    private void drain() {
+        ArrayList<String> batch = new ArrayList<>(CAPACITY);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (String line : batch) {
+                    if (line == CLOSE) {
+                        out.flush();
+                        return;
+                    }
+                    out.println(line);
+                }
+                batch.clear();
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            out.flush();
+        }
+    }
+}
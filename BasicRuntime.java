@@ -0,0 +1,140 @@
+import java.io.UncheckedIOException;
+
+/**
+ *
+ * BASICRUNTIME.JAVA
+ *
+ * The BasicRuntime class is what a program compiled ahead of time with
+ * "java Main compile" runs against. It stands in for the Model: the compiled code
+ * calls the same methods on it to get instruction slices, print and report failed
+ * statements, but there is no parser, no interpreter and no limit behind them.
+ * Output goes to stdout through an OutputBuffer, so it is byte for byte what
+ * "java Main run" prints for the same program. If stdout cannot be written, the
+ * program is stopped and exits with code 1, as "java Main run" does.
+ *
+ * ProgramJar copies this class into every compiled jar, together with the output
+ * classes it uses; it must not depend on anything else in the interpreter.
+ */
+
+public final class BasicRuntime {
+    private static final int SLICE = 16384; // Instructions between output flushes, as in the Model
+
+    private final OutputBuffer output = new OutputBuffer(FileOutputSink.stdout());
+    int currentLine = 0; // Set by the compiled program when it returns
+    private boolean writeFailed = false;
+
+/**
+ * Creates a runtime that prints to stdout.
+ *
+ * @param basicNumbers Whether integer values are printed as 5 instead of 5.0.
+ */
+
+    BasicRuntime(boolean basicNumbers) {
+        output.setBasicNumbers(basicNumbers);
+    }
+
+/**
+ * Passes the output printed so far on to stdout and hands out the next slice.
+ *
+ * @return The number of instructions to run before calling again, or 0 to stop.
+ */
+
+    int nextSlice() {
+        try {
+            output.flush();
+            return SLICE;
+        } catch (UncheckedIOException error) {
+            stop(error);
+            return 0;
+        }
+    }
+
+/**
+ * Prints the value of a "print" statement.
+ *
+ * @param value The value to print.
+ * @return False if the output could not be written.
+ */
+
+    boolean printValue(double value) {
+        try {
+            output.append(value).append('\n');
+            return true;
+        } catch (UncheckedIOException error) {
+            return stop(error);
+        }
+    }
+
+/**
+ * Prints the line of an assignment, such as "c = 5.0".
+ *
+ * @param name The name of the assigned variable.
+ * @param value The assigned value.
+ * @return False if the output could not be written.
+ */
+
+    boolean printAssignment(String name, double value) {
+        try {
+            output.append(name).append(" = ").append(value).append('\n');
+            return true;
+        } catch (UncheckedIOException error) {
+            return stop(error);
+        }
+    }
+
+/**
+ * Prints the message of an ERROR instruction.
+ *
+ * @param message The message.
+ * @return False if the output could not be written.
+ */
+
+    boolean printMessage(String message) {
+        try {
+            output.append(message).append('\n');
+            return true;
+        } catch (UncheckedIOException error) {
+            return stop(error);
+        }
+    }
+
+/**
+ * Reports an instruction that failed to evaluate.
+ *
+ * @param prefix What failed, such as "Error evaluating print expression: ".
+ * @param e The error, such as an undefined variable.
+ * @return False if the output could not be written.
+ */
+
+    boolean statementFailed(String prefix, IllegalArgumentException e) {
+        try {
+            output.append(prefix).append(e.getMessage()).append('\n');
+            return true;
+        } catch (UncheckedIOException error) {
+            return stop(error);
+        }
+    }
+
+/**
+ * Writes out the rest of the output once the program has ended.
+ */
+
+    void finish() {
+        if (!writeFailed) {
+            try {
+                output.flush();
+            } catch (UncheckedIOException error) {
+                stop(error);
+            }
+        }
+        if (writeFailed) {
+            System.exit(1);
+        }
+    }
+
+    private boolean stop(UncheckedIOException error) {
+        System.err.println("Error writing output: " + error.getMessage());
+        writeFailed = true;
+        return false;
+    }
+}
@@ -0,0 +1,677 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * BYTECODECOMPILER.JAVA
+ *
+ * The BytecodeCompiler class turns a Program into a JVM class, so HotSpot can
+ * compile the BASIC program itself instead of the Model's interpreter loop. The
+ * class is written with ClassFileWriter and loaded as a hidden class, which is
+ * unloaded again once the program is no longer used. For "java Main compile" the
+ * same code is written as a class with a main method that runs against a
+ * BasicRuntime instead of a Model; see ProgramJar.
+ *
+ * The class has a static method, run(model, frame, defined, start, slice), that
+ * runs the program from instruction start with slice instructions left of the
+ * current slice of the instruction budget, so a run can move into it from the
+ * interpreter at any instruction. Variables live in local double slots, each
+ * with an int flag telling whether it has been assigned; they are read from the
+ * Model's frame on entry and written back on exit. Every instruction is a block
+ * of bytecode and every goto is a real jump. The method behaves exactly like the
+ * interpreter loop:
+ *
+ *  - Each instruction first counts down the current slice of the instruction
+ *    budget and asks Model.nextSlice() for a new one when it runs out, so step
+ *    counts, limits and cancel requests work as in the interpreter.
+ *  - Output goes through the Model's print methods, which return false once the
+ *    output limit is exceeded. Variable names and error messages are constants
+ *    of the class, so the Model's symbol table is not needed at run time.
+ *  - Reading an unassigned variable, or an expression that did not compile,
+ *    throws an IllegalArgumentException. One handler reports it through
+ *    Model.statementFailed(), using the index of the failing instruction kept in
+ *    a local to pick its message, and resumes with the next instruction.
+ *
+ * The method returns the unused part of the last slice, like the interpreter loop,
+ * and leaves the index of the next instruction in Model.currentLine.
+ *
+ * Given the facts a TypeInference found about the program, the class leaves out
+ * the undefined-variable checks of variables that are certainly assigned, and
+ * holds the program's integer variables in long locals. Arithmetic on them whose
+ * result is known to stay an exact integer runs on longs without any check; the
+ * rest runs on doubles.
+ *
+ * The tiered Model can also ask for a speculative class, in which the variables
+ * it has only seen holding integers live in long locals (see Speculation). An
+ * operator whose operands are both longs then runs on longs, through a guard
+ * that fails when the result would differ from the double one; storing into a
+ * long variable checks that the value is an exact integer. A failed guard throws
+ * Speculation.FAILED before the instruction has changed anything, and a second
+ * handler leaves the method there: it writes the variables back, gives the step
+ * of the instruction back and returns with Model.currentLine at that instruction,
+ * for the Model to run it again with doubles.
+ */
+
+public final class BytecodeCompiler {
+    /** HotSpot does not JIT-compile methods larger than this (-XX:+DontCompileHugeMethods). */
+    static final int MAX_CODE_SIZE = 8000;
+    /** The most a standalone class may use; jumps have 16-bit offsets. */
+    static final int MAX_STANDALONE_CODE_SIZE = Short.MAX_VALUE;
+
+    private static final String EXCEPTION = "java/lang/IllegalArgumentException";
+    private static final String SPECULATION = "Speculation";
+    private static final String SPECULATION_FAILED = "Speculation$Failed";
+    private static final MethodType RUN_TYPE = MethodType.methodType(int.class,
+            Model.class, double[].class, boolean[].class, int.class, int.class);
+
+    // Local variable slots of the run method
+    private static final int MODEL_LOCAL = 0;
+    private static final int FRAME_LOCAL = 1;
+    private static final int DEFINED_LOCAL = 2;
+    private static final int START_LOCAL = 3;   // Next instruction to run; the parameter start
+    private static final int SLICE_LOCAL = 4;   // Instructions left in the current slice; the parameter slice
+    private static final int CURRENT_LOCAL = 5; // Instruction that may fail, for the handler
+    private static final int ERROR_LOCAL = 6;   // The exception, in the handler
+    private static final int FIRST_VARIABLE_LOCAL = 7;
+
+    private final Program program;
+    private final ClassFileWriter writer;
+    private final String runtime; // The class whose methods the code calls: Model or BasicRuntime
+    private final String runDescriptor;
+    private final TypeInference facts;    // What holds for the variables; null if nothing is known
+    private final boolean[] integerSlots; // Variables held in long locals; null if none are
+    private final boolean speculative;    // Whether guards may fail, for variables not known to be integers
+    private final ClassFileWriter.Code code = new ClassFileWriter.Code();
+    private final ClassFileWriter.Label[] heads;  // Start of each instruction, counting a step
+    private final ClassFileWriter.Label[] bodies; // Start of each instruction after the step is counted
+    private final ClassFileWriter.Label refill = new ClassFileWriter.Label();
+    private final ClassFileWriter.Label dispatch = new ClassFileWriter.Label();
+    private final ClassFileWriter.Label exit = new ClassFileWriter.Label();
+
+    private BytecodeCompiler(Program program, String className, String runtime,
+                             TypeInference facts, boolean[] speculatedSlots) {
+        this.program = program.plain();
+        this.facts = facts;
+        this.speculative = speculatedSlots != null;
+        boolean[] slots = speculatedSlots != null ? speculatedSlots.clone() : null;
+        for (int slot = 0; facts != null && slot < program.symbols.size(); slot++) {
+            if (facts.isInteger(slot)) {
+                if (slots == null) {
+                    slots = new boolean[program.symbols.size()];
+                }
+                slots[slot] = true;
+            }
+        }
+        this.integerSlots = slots;
+        this.writer = new ClassFileWriter(className);
+        this.runtime = runtime;
+        this.runDescriptor = "(L" + runtime + ";[D[ZII)I";
+        heads = labels(program.size + 1); // heads[size] ends the program
+        bodies = labels(program.size);
+    }
+
+/**
+ * Compiles a program and loads it as a hidden class.
+ *
+ * @param program The program to compile.
+ * @return A handle to the static method run(Model, double[], boolean[], int, int)int,
+ *         or null if the program is too large for HotSpot to compile.
+ */
+
+    public static MethodHandle compile(Program program) {
+        return compile(program, null, null);
+    }
+
+/**
+ * Compiles a program using facts about its variables, and possibly speculating
+ * that some more of them only ever hold integers, and loads it as a hidden class.
+ * It must only be entered where facts.holdsAt() holds, and, if it speculates,
+ * where Speculation.fits() holds for the frame. A speculative class returns
+ * early, with Model.currentLine at an instruction smaller than the program size
+ * and no stop requested, when an instruction needs a variable to hold a non-integer.
+ *
+ * @param program The program to compile.
+ * @param facts The facts from TypeInference.analyze(program), or null.
+ * @param speculatedSlots Which variables to hold as longs with guards, or null for none.
+ * @return A handle to the static method run(Model, double[], boolean[], int, int)int,
+ *         or null if the program is too large for HotSpot to compile.
+ */
+
+    static MethodHandle compile(Program program, TypeInference facts, boolean[] speculatedSlots) {
+        BytecodeCompiler compiler = new BytecodeCompiler(program, "BasicProgram", "Model", facts, speculatedSlots);
+        if (!compiler.generateRun(MAX_CODE_SIZE)) {
+            return null;
+        }
+        byte[] classFile = compiler.writer.toByteArray();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return lookup.findStatic(lookup.lookupClass(), "run", RUN_TYPE);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load compiled program", e);
+        }
+    }
+
+/**
+ * Compiles a program into a class that runs it from its main method, using a
+ * BasicRuntime for output. The main method ignores its arguments.
+ *
+ * @param program The program to compile.
+ * @param className The name of the class.
+ * @param basicNumbers Whether integer values are printed as 5 instead of 5.0.
+ * @return The class file.
+ * @throws IllegalArgumentException if the program is too large for one method.
+ */
+
+    public static byte[] compileStandalone(Program program, String className, boolean basicNumbers) {
+        // main always starts at the first instruction with no variables, where the facts hold
+        BytecodeCompiler compiler = new BytecodeCompiler(program, className, "BasicRuntime",
+                TypeInference.analyze(program), null);
+        if (!compiler.generateRun(MAX_STANDALONE_CODE_SIZE)) {
+            throw new IllegalArgumentException("Program too large to compile");
+        }
+        compiler.generateMain(basicNumbers);
+        return compiler.writer.toByteArray();
+    }
+
+/**
+ * Generates the run method and adds it to the class.
+ *
+ * @param maxSize The largest code size allowed.
+ * @return False if the method would exceed maxSize.
+ */
+
+    private boolean generateRun(int maxSize) {
+        int size = program.size;
+        int variables = program.symbols.size();
+
+        // Entry: load the variables, then start at instruction start unless it is past the end
+        code.pushInt(0);
+        code.local(ClassFileWriter.ISTORE, CURRENT_LOCAL);
+        for (int slot = 0; slot < variables; slot++) {
+            code.local(ClassFileWriter.ALOAD, FRAME_LOCAL);
+            code.pushInt(slot);
+            code.op(ClassFileWriter.DALOAD);
+            if (isInteger(slot)) {
+                code.op(ClassFileWriter.D2L); // Exact: the Model checks holdsAt() and fits() first
+                code.local(ClassFileWriter.LSTORE, valueLocal(slot));
+            } else {
+                code.local(ClassFileWriter.DSTORE, valueLocal(slot));
+            }
+            code.local(ClassFileWriter.ALOAD, DEFINED_LOCAL);
+            code.pushInt(slot);
+            code.op(ClassFileWriter.BALOAD);
+            code.local(ClassFileWriter.ISTORE, flagLocal(slot));
+        }
+        code.local(ClassFileWriter.ILOAD, START_LOCAL);
+        code.pushInt(size);
+        code.jump(ClassFileWriter.IF_ICMPGE, exit);
+        ClassFileWriter.Label enter = new ClassFileWriter.Label();
+        code.mark(enter); // Count the step of instruction start, then run its body
+        code.iinc(SLICE_LOCAL, -1);
+        code.local(ClassFileWriter.ILOAD, SLICE_LOCAL);
+        code.jump(ClassFileWriter.IFGE, dispatch);
+
+        // Refill the slice, then continue with the body of instruction start
+        code.mark(refill);
+        code.local(ClassFileWriter.ALOAD, MODEL_LOCAL);
+        code.op(ClassFileWriter.INVOKEVIRTUAL, writer.methodRef(runtime, "nextSlice", "()I"));
+        code.op(ClassFileWriter.DUP);
+        code.local(ClassFileWriter.ISTORE, SLICE_LOCAL);
+        code.jump(ClassFileWriter.IFEQ, exit);
+        code.iinc(SLICE_LOCAL, -1);
+        code.mark(dispatch);
+        code.local(ClassFileWriter.ILOAD, START_LOCAL);
+        code.tableSwitch(exit, bodies);
+
+        ClassFileWriter.Label covered = new ClassFileWriter.Label();
+        code.mark(covered);
+        for (int index = 0; index < size; index++) {
+            code.mark(heads[index]);
+            code.iinc(SLICE_LOCAL, -1);
+            code.local(ClassFileWriter.ILOAD, SLICE_LOCAL);
+            code.jump(ClassFileWriter.IFGE, bodies[index]);
+            code.pushInt(index); // The slice ran out: refill it before this instruction
+            code.local(ClassFileWriter.ISTORE, START_LOCAL);
+            code.jump(ClassFileWriter.GOTO, refill);
+            code.mark(bodies[index]);
+            instruction(index);
+        }
+        code.mark(heads[size]); // End of the program, also reached by "end" and when output stops it
+        code.pushInt(size);
+        code.local(ClassFileWriter.ISTORE, START_LOCAL);
+        code.jump(ClassFileWriter.GOTO, exit);
+        ClassFileWriter.Label coveredEnd = new ClassFileWriter.Label();
+        code.mark(coveredEnd);
+
+        // Handler: report the error of instruction current with its message and go on with the next one
+        ClassFileWriter.Label handler = new ClassFileWriter.Label();
+        code.mark(handler);
+        code.local(ClassFileWriter.ASTORE, ERROR_LOCAL);
+        code.local(ClassFileWriter.ALOAD, MODEL_LOCAL);
+        code.local(ClassFileWriter.ILOAD, CURRENT_LOCAL);
+        Map<String, ClassFileWriter.Label> prefixes = new LinkedHashMap<>();
+        ClassFileWriter.Label noPrefix = new ClassFileWriter.Label();
+        ClassFileWriter.Label[] prefixOf = new ClassFileWriter.Label[size];
+        for (int index = 0; index < size; index++) {
+            String prefix = Model.errorPrefix(program, index);
+            prefixOf[index] = prefix == null ? noPrefix : prefixes.computeIfAbsent(prefix, p -> new ClassFileWriter.Label());
+        }
+        code.tableSwitch(noPrefix, prefixOf);
+        ClassFileWriter.Label report = new ClassFileWriter.Label();
+        for (Map.Entry<String, ClassFileWriter.Label> prefix : prefixes.entrySet()) {
+            code.mark(prefix.getValue());
+            code.op(ClassFileWriter.LDC_W, writer.string(prefix.getKey()));
+            code.jump(ClassFileWriter.GOTO, report);
+        }
+        code.mark(noPrefix);
+        code.op(ClassFileWriter.LDC_W, writer.string(""));
+        code.mark(report);
+        code.local(ClassFileWriter.ALOAD, ERROR_LOCAL);
+        code.op(ClassFileWriter.INVOKEVIRTUAL, writer.methodRef(runtime, "statementFailed", "(Ljava/lang/String;L" + EXCEPTION + ";)Z"));
+        code.jump(ClassFileWriter.IFEQ, heads[size]);
+        code.iinc(CURRENT_LOCAL, 1);
+        code.local(ClassFileWriter.ILOAD, CURRENT_LOCAL);
+        code.local(ClassFileWriter.ISTORE, START_LOCAL);
+        code.local(ClassFileWriter.ILOAD, START_LOCAL);
+        code.pushInt(size);
+        code.jump(ClassFileWriter.IF_ICMPGE, heads[size]);
+        code.jump(ClassFileWriter.GOTO, enter);
+        code.handler(covered, coveredEnd, handler, writer.classRef(EXCEPTION));
+
+        // Deoptimization: give back the step of instruction current and leave before it
+        if (speculative) {
+            ClassFileWriter.Label deoptimize = new ClassFileWriter.Label();
+            code.mark(deoptimize);
+            code.op(ClassFileWriter.POP);
+            code.local(ClassFileWriter.ILOAD, CURRENT_LOCAL);
+            code.local(ClassFileWriter.ISTORE, START_LOCAL);
+            code.iinc(SLICE_LOCAL, 1);
+            code.jump(ClassFileWriter.GOTO, exit);
+            code.handler(covered, coveredEnd, deoptimize, writer.classRef(SPECULATION_FAILED));
+        }
+
+        // Exit: write the variables back and leave the next instruction in currentLine
+        code.mark(exit);
+        for (int slot = 0; slot < variables; slot++) {
+            code.local(ClassFileWriter.ALOAD, FRAME_LOCAL);
+            code.pushInt(slot);
+            loadDouble(slot);
+            code.op(ClassFileWriter.DASTORE);
+            code.local(ClassFileWriter.ALOAD, DEFINED_LOCAL);
+            code.pushInt(slot);
+            code.local(ClassFileWriter.ILOAD, flagLocal(slot));
+            code.op(ClassFileWriter.BASTORE);
+        }
+        code.local(ClassFileWriter.ALOAD, MODEL_LOCAL);
+        code.local(ClassFileWriter.ILOAD, START_LOCAL);
+        code.op(ClassFileWriter.PUTFIELD, writer.fieldRef(runtime, "currentLine", "I"));
+        code.local(ClassFileWriter.ILOAD, SLICE_LOCAL);
+        code.op(ClassFileWriter.IRETURN);
+
+        if (code.length() > maxSize) {
+            return false;
+        }
+        int maxDepth = 1;
+        for (Expression expression : program.expressions) {
+            maxDepth = Math.max(maxDepth, expression.maxStack());
+        }
+        code.setMaxs(2 * maxDepth + 6, FIRST_VARIABLE_LOCAL + 3 * variables);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "run", runDescriptor, code);
+        return true;
+    }
+
+/**
+ * Generates main(String[]), which runs the program from the start with fresh
+ * variables and a new BasicRuntime, then flushes its output.
+ *
+ * @param basicNumbers Whether integer values are printed as 5 instead of 5.0.
+ */
+
+    private void generateMain(boolean basicNumbers) {
+        int variables = program.symbols.size();
+        ClassFileWriter.Code main = new ClassFileWriter.Code();
+        main.op(ClassFileWriter.NEW, writer.classRef(runtime));
+        main.op(ClassFileWriter.DUP);
+        main.pushInt(basicNumbers ? 1 : 0);
+        main.op(ClassFileWriter.INVOKESPECIAL, writer.methodRef(runtime, "<init>", "(Z)V"));
+        main.local(ClassFileWriter.ASTORE, 1);
+        main.local(ClassFileWriter.ALOAD, 1);
+        main.pushInt(variables);
+        main.newArray(ClassFileWriter.T_DOUBLE);
+        main.pushInt(variables);
+        main.newArray(ClassFileWriter.T_BOOLEAN);
+        main.pushInt(0);
+        main.pushInt(0);
+        main.op(ClassFileWriter.INVOKESTATIC, writer.methodRef(writer.className(), "run", runDescriptor));
+        main.op(ClassFileWriter.POP);
+        main.local(ClassFileWriter.ALOAD, 1);
+        main.op(ClassFileWriter.INVOKEVIRTUAL, writer.methodRef(runtime, "finish", "()V"));
+        main.op(ClassFileWriter.RETURN);
+        main.setMaxs(6, 2);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "main", "([Ljava/lang/String;)V", main);
+    }
+
+/**
+ * Generates the body of one instruction.
+ *
+ * @param index The index of the instruction.
+ */
+
+    private void instruction(int index) {
+        int pc = index * Program.WIDTH;
+        int opcode = program.code[pc];
+        switch (opcode) {
+            case Opcode.NOP:
+                break;
+            case Opcode.PRINT:
+                markCurrent(index, program.expressions[program.code[pc + 1]]);
+                code.local(ClassFileWriter.ALOAD, MODEL_LOCAL);
+                expression(index, program.expressions[program.code[pc + 1]], true);
+                code.op(ClassFileWriter.INVOKEVIRTUAL, writer.methodRef(runtime, "printValue", "(D)Z"));
+                code.jump(ClassFileWriter.IFEQ, heads[program.size]);
+                break;
+            case Opcode.ASSIGN: {
+                int slot = program.code[pc + 1];
+                markCurrent(index, program.expressions[program.code[pc + 2]]);
+                if (!isInteger(slot)) {
+                    expression(index, program.expressions[program.code[pc + 2]], true);
+                    code.local(ClassFileWriter.DSTORE, valueLocal(slot));
+                } else {
+                    Expression expression = program.expressions[program.code[pc + 2]];
+                    Node tree = tree(index, expression);
+                    if (tree == null) {
+                        throwError(expression.error);
+                    } else if (emit(index, tree, false)) {
+                        if (tree.range.isExact()) {
+                            code.op(ClassFileWriter.D2L);
+                        } else {
+                            code.op(ClassFileWriter.INVOKESTATIC, writer.methodRef(SPECULATION, "toLong", "(D)J"));
+                        }
+                    }
+                    code.local(ClassFileWriter.LSTORE, valueLocal(slot));
+                }
+                code.pushInt(1);
+                code.local(ClassFileWriter.ISTORE, flagLocal(slot));
+                code.local(ClassFileWriter.ALOAD, MODEL_LOCAL);
+                code.op(ClassFileWriter.LDC_W, writer.string(program.symbols.name(slot)));
+                loadDouble(slot);
+                code.op(ClassFileWriter.INVOKEVIRTUAL, writer.methodRef(runtime, "printAssignment", "(Ljava/lang/String;D)Z"));
+                code.jump(ClassFileWriter.IFEQ, heads[program.size]);
+                break;
+            }
+            case Opcode.IF_EQ:
+            case Opcode.IF_GT:
+            case Opcode.IF_LT:
+            case Opcode.IF_GE:
+            case Opcode.IF_LE: {
+                Expression left = program.expressions[program.code[pc + 1]];
+                Expression right = program.expressions[program.code[pc + 2]];
+                markCurrent(index, left, right);
+                ClassFileWriter.Label target = heads[program.code[pc + 3]];
+                Node leftTree = tree(index, left);
+                Node rightTree = tree(index, right);
+                if (leftTree != null && rightTree != null && leftTree.isLong && rightTree.isLong) {
+                    emit(index, leftTree, false);
+                    emit(index, rightTree, false);
+                    code.op(ClassFileWriter.LCMP);
+                    switch (opcode) {
+                        case Opcode.IF_EQ: code.jump(ClassFileWriter.IFEQ, target); break;
+                        case Opcode.IF_GT: code.jump(ClassFileWriter.IFGT, target); break;
+                        case Opcode.IF_GE: code.jump(ClassFileWriter.IFGE, target); break;
+                        case Opcode.IF_LT: code.jump(ClassFileWriter.IFLT, target); break;
+                        default: code.jump(ClassFileWriter.IFLE, target); break;
+                    }
+                    break;
+                }
+                expression(index, left, true);
+                expression(index, right, true);
+                // dcmpl and dcmpg differ only for NaN, which must make every comparison false
+                switch (opcode) {
+                    case Opcode.IF_EQ: code.op(ClassFileWriter.DCMPL); code.jump(ClassFileWriter.IFEQ, target); break;
+                    case Opcode.IF_GT: code.op(ClassFileWriter.DCMPL); code.jump(ClassFileWriter.IFGT, target); break;
+                    case Opcode.IF_GE: code.op(ClassFileWriter.DCMPL); code.jump(ClassFileWriter.IFGE, target); break;
+                    case Opcode.IF_LT: code.op(ClassFileWriter.DCMPG); code.jump(ClassFileWriter.IFLT, target); break;
+                    default: code.op(ClassFileWriter.DCMPG); code.jump(ClassFileWriter.IFLE, target); break;
+                }
+                break;
+            }
+            case Opcode.GOTO:
+                code.jump(ClassFileWriter.GOTO, heads[program.code[pc + 1]]);
+                break;
+            case Opcode.END:
+                code.jump(ClassFileWriter.GOTO, heads[program.size]);
+                break;
+            case Opcode.ERROR:
+                code.local(ClassFileWriter.ALOAD, MODEL_LOCAL);
+                code.op(ClassFileWriter.LDC_W, writer.string(program.strings[program.code[pc + 1]]));
+                code.op(ClassFileWriter.INVOKEVIRTUAL, writer.methodRef(runtime, "printMessage", "(Ljava/lang/String;)Z"));
+                code.jump(ClassFileWriter.IFEQ, heads[program.size]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+/**
+ * An expression as a tree, so each operator can be generated for the type its
+ * operands have. It runs on longs if both are longs and its result is known to be
+ * an exact integer, or can be guarded in a speculative class; else on doubles.
+ */
+
+    private static final class Node {
+        final int op;         // Expression.CONST, LOAD, ADD, SUB, MUL or DIV
+        final Node left;
+        final Node right;
+        final int slot;       // For LOAD
+        final double constant; // For CONST
+        final TypeInference.Range range; // The values it can have
+        final boolean isLong;
+
+        Node(int op, Node left, Node right, int slot, double constant, TypeInference.Range range, boolean isLong) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            this.slot = slot;
+            this.constant = constant;
+            this.range = range;
+            this.isLong = isLong;
+        }
+    }
+
+/**
+ * Generates an expression, leaving its value on the stack. An expression that
+ * did not compile throws its error instead.
+ *
+ * @param index The index of the instruction evaluating it.
+ * @param expression The expression.
+ * @param asDouble Whether the value must be a double; otherwise it may be a long.
+ * @return True if the value is a double, false if it is a long.
+ */
+
+    private boolean expression(int index, Expression expression, boolean asDouble) {
+        Node tree = tree(index, expression);
+        if (tree == null) {
+            throwError(expression.error);
+            return true;
+        }
+        return emit(index, tree, asDouble);
+    }
+
+/**
+ * Builds the tree of an expression from its postfix code.
+ *
+ * @param index The index of the instruction evaluating it.
+ * @param expression The expression.
+ * @return The root, or null if the expression did not compile.
+ */
+
+    private Node tree(int index, Expression expression) {
+        if (expression.error != null) {
+            return null;
+        }
+        int[] ops = expression.code;
+        Node[] stack = new Node[expression.maxStack()];
+        int sp = 0;
+        int pc = 0;
+        while (pc < ops.length) {
+            int op = ops[pc++];
+            switch (op) {
+                case Expression.CONST: {
+                    double value = expression.constants[ops[pc++]];
+                    stack[sp++] = new Node(op, null, null, -1, value, TypeInference.Range.of(value),
+                            integerSlots != null && Speculation.isExactInteger(value));
+                    break;
+                }
+                case Expression.LOAD: {
+                    int slot = ops[pc++];
+                    TypeInference.Range range = facts != null ? facts.range(index, slot) : TypeInference.Range.ANY;
+                    stack[sp++] = new Node(op, null, null, slot, 0, range, isInteger(slot));
+                    break;
+                }
+                case Expression.ADD:
+                case Expression.SUB:
+                case Expression.MUL:
+                case Expression.DIV: {
+                    Node right = stack[--sp];
+                    Node left = stack[--sp];
+                    TypeInference.Range range = TypeInference.apply(op, left.range, right.range);
+                    stack[sp++] = new Node(op, left, right, -1, 0, range, op != Expression.DIV
+                            && left.isLong && right.isLong && (range.isExact() || speculative));
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown expression opcode: " + op);
+            }
+        }
+        return stack[0];
+    }
+
+    private boolean emit(int index, Node node, boolean asDouble) {
+        boolean asLong = node.isLong && !asDouble;
+        switch (node.op) {
+            case Expression.CONST:
+                if (asLong) {
+                    long value = (long) node.constant;
+                    if (value == 0 || value == 1) {
+                        code.op(value == 0 ? ClassFileWriter.LCONST_0 : ClassFileWriter.LCONST_1);
+                    } else {
+                        code.op(ClassFileWriter.LDC2_W, writer.longConstant(value));
+                    }
+                } else if (Double.doubleToRawLongBits(node.constant) == 0L) {
+                    code.op(ClassFileWriter.DCONST_0);
+                } else if (node.constant == 1.0) {
+                    code.op(ClassFileWriter.DCONST_1);
+                } else {
+                    code.op(ClassFileWriter.LDC2_W, writer.doubleConstant(node.constant));
+                }
+                return !asLong;
+            case Expression.LOAD: {
+                // The throw is inline: the verifier needs the same stack height at every jump target
+                if (facts == null || !facts.isDefined(index, node.slot)) {
+                    ClassFileWriter.Label defined = new ClassFileWriter.Label();
+                    code.local(ClassFileWriter.ILOAD, flagLocal(node.slot));
+                    code.jump(ClassFileWriter.IFNE, defined);
+                    throwError("Undefined variable: " + program.symbols.name(node.slot));
+                    code.mark(defined);
+                }
+                if (asLong) {
+                    code.local(ClassFileWriter.LLOAD, valueLocal(node.slot));
+                } else {
+                    loadDouble(node.slot);
+                }
+                return !asLong;
+            }
+            default:
+                break;
+        }
+        emit(index, node.left, !node.isLong);
+        emit(index, node.right, !node.isLong);
+        if (node.isLong) {
+            if (node.range.isExact()) {
+                code.op(node.op == Expression.ADD ? ClassFileWriter.LADD
+                        : node.op == Expression.SUB ? ClassFileWriter.LSUB : ClassFileWriter.LMUL);
+            } else {
+                String guard = node.op == Expression.ADD ? "add" : node.op == Expression.SUB ? "subtract" : "multiply";
+                code.op(ClassFileWriter.INVOKESTATIC, writer.methodRef(SPECULATION, guard, "(JJ)J"));
+            }
+            if (asDouble) {
+                code.op(ClassFileWriter.L2D);
+            }
+            return asDouble;
+        }
+        switch (node.op) {
+            case Expression.ADD: code.op(ClassFileWriter.DADD); break;
+            case Expression.SUB: code.op(ClassFileWriter.DSUB); break;
+            case Expression.MUL: code.op(ClassFileWriter.DMUL); break;
+            default: code.op(ClassFileWriter.DDIV); break;
+        }
+        return true;
+    }
+
+/**
+ * Loads a variable as a double, converting it if it is held as a long.
+ *
+ * @param slot The variable slot.
+ */
+
+    private void loadDouble(int slot) {
+        if (isInteger(slot)) {
+            code.local(ClassFileWriter.LLOAD, valueLocal(slot));
+            code.op(ClassFileWriter.L2D);
+        } else {
+            code.local(ClassFileWriter.DLOAD, valueLocal(slot));
+        }
+    }
+
+    private boolean isInteger(int slot) {
+        return integerSlots != null && integerSlots[slot];
+    }
+
+/**
+ * Records the index of an instruction whose expressions can fail, so the handler
+ * knows which instruction to report. In a speculative class any such instruction
+ * may fail a guard.
+ *
+ * @param index The index of the instruction.
+ * @param expressions The expressions the instruction evaluates.
+ */
+
+    private void markCurrent(int index, Expression... expressions) {
+        for (Expression expression : expressions) {
+            boolean mayFail = facts != null ? facts.mayFail(index, expression)
+                    : expression.error != null || expression.readsVariables();
+            if (mayFail || speculative) {
+                code.pushInt(index);
+                code.local(ClassFileWriter.ISTORE, CURRENT_LOCAL);
+                return;
+            }
+        }
+    }
+
+    private void throwError(String message) {
+        code.op(ClassFileWriter.NEW, writer.classRef(EXCEPTION));
+        code.op(ClassFileWriter.DUP);
+        code.op(ClassFileWriter.LDC_W, writer.string(message));
+        code.op(ClassFileWriter.INVOKESPECIAL, writer.methodRef(EXCEPTION, "<init>", "(Ljava/lang/String;)V"));
+        code.op(ClassFileWriter.ATHROW);
+    }
+
+    private static int valueLocal(int slot) {
+        return FIRST_VARIABLE_LOCAL + 3 * slot;
+    }
+
+    private static int flagLocal(int slot) {
+        return FIRST_VARIABLE_LOCAL + 3 * slot + 2;
+    }
+
+    private static ClassFileWriter.Label[] labels(int count) {
+        ClassFileWriter.Label[] labels = new ClassFileWriter.Label[count];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = new ClassFileWriter.Label();
+        }
+        return labels;
+    }
+}
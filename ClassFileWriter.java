@@ -0,0 +1,584 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * CLASSFILEWRITER.JAVA
+ *
+ * The ClassFileWriter class writes JVM class files: just enough of the format for
+ * the BytecodeCompiler, which needs a constant pool and static methods made of
+ * plain bytecode, for hidden classes as well as for classes written to a jar. Classes are written as version 49 (Java 5) class files, which
+ * the JVM verifies by type inference, so no StackMapTable has to be computed.
+ *
+ * Code is built with a Code object: instructions are appended one by one, and
+ * jumps refer to Labels that are patched once their position is known. Branches
+ * use 16-bit offsets, which limits a method to 32 KB of bytecode.
+ */
+
+public final class ClassFileWriter {
+    private static final int VERSION = 49;
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    // Element types of newarray
+    public static final int T_BOOLEAN = 4;
+    public static final int T_DOUBLE = 7;
+
+    // Opcodes used by the compilers
+    public static final int ICONST_0 = 0x03;
+    public static final int ICONST_1 = 0x04;
+    public static final int LCONST_0 = 0x09;
+    public static final int LCONST_1 = 0x0A;
+    public static final int DCONST_0 = 0x0E;
+    public static final int DCONST_1 = 0x0F;
+    public static final int SIPUSH = 0x11;
+    public static final int LDC_W = 0x13;
+    public static final int LDC2_W = 0x14;
+    public static final int ILOAD = 0x15;
+    public static final int LLOAD = 0x16;
+    public static final int DLOAD = 0x18;
+    public static final int ALOAD = 0x19;
+    public static final int DALOAD = 0x31;
+    public static final int BALOAD = 0x33;
+    public static final int ISTORE = 0x36;
+    public static final int LSTORE = 0x37;
+    public static final int DSTORE = 0x39;
+    public static final int ASTORE = 0x3A;
+    public static final int DASTORE = 0x52;
+    public static final int BASTORE = 0x54;
+    public static final int POP = 0x57;
+    public static final int DUP = 0x59;
+    public static final int DUP2 = 0x5C;
+    public static final int SWAP = 0x5F;
+    public static final int LADD = 0x61;
+    public static final int DADD = 0x63;
+    public static final int LSUB = 0x65;
+    public static final int DSUB = 0x67;
+    public static final int LMUL = 0x69;
+    public static final int DMUL = 0x6B;
+    public static final int DDIV = 0x6F;
+    public static final int IINC = 0x84;
+    public static final int L2D = 0x8A;
+    public static final int D2L = 0x8F;
+    public static final int LCMP = 0x94;
+    public static final int DCMPL = 0x97;
+    public static final int DCMPG = 0x98;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9A;
+    public static final int IFLT = 0x9B;
+    public static final int IFGE = 0x9C;
+    public static final int IFGT = 0x9D;
+    public static final int IFLE = 0x9E;
+    public static final int IF_ICMPGE = 0xA2;
+    public static final int GOTO = 0xA7;
+    public static final int TABLESWITCH = 0xAA;
+    public static final int IRETURN = 0xAC;
+    public static final int DRETURN = 0xAF;
+    public static final int RETURN = 0xB1;
+    public static final int GETSTATIC = 0xB2;
+    public static final int GETFIELD = 0xB4;
+    public static final int PUTFIELD = 0xB5;
+    public static final int INVOKEVIRTUAL = 0xB6;
+    public static final int INVOKESPECIAL = 0xB7;
+    public static final int INVOKESTATIC = 0xB8;
+    public static final int NEW = 0xBB;
+    private static final int NEWARRAY = 0xBC;
+    public static final int ATHROW = 0xBF;
+    private static final int WIDE = 0xC4;
+
+    private final String className;
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolData = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1; // Entry 0 is unused
+    private final List<byte[]> methods = new ArrayList<>();
+
+/**
+ * Creates a writer for a class that extends java.lang.Object.
+ *
+ * @param className The internal name of the class, such as "BasicProgram".
+ */
+
+    public ClassFileWriter(String className) {
+        this.className = className;
+    }
+
+/**
+ * Returns the internal name of the class being written.
+ *
+ * @return The class name.
+ */
+
+    public String className() {
+        return className;
+    }
+
+/**
+ * Adds a method to the class.
+ *
+ * @param access The access flags of the method.
+ * @param name The method name.
+ * @param descriptor The method descriptor, such as "(I)D".
+ * @param code The finished code of the method.
+ */
+
+    public void addMethod(int access, String name, String descriptor, Code code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1); // One attribute: Code
+            byte[] body = code.toByteArray();
+            out.writeShort(utf8("Code"));
+            out.writeInt(body.length);
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+/**
+ * Returns the finished class file.
+ *
+ * @return The bytes of the class file.
+ */
+
+    public byte[] toByteArray() {
+        int thisClass = classRef(className);
+        int superClass = classRef("java/lang/Object");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            out.write(pool.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // Interfaces
+            out.writeShort(0); // Fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0); // Attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+/**
+ * Returns the constant pool index of a UTF-8 string, adding it if needed.
+ *
+ * @param value The string.
+ * @return The constant pool index.
+ */
+
+    public int utf8(String value) {
+        return constant("U" + value, 1, out -> out.writeUTF(value), 1);
+    }
+
+/**
+ * Returns the constant pool index of a class reference, adding it if needed.
+ *
+ * @param name The internal name of the class, such as "java/lang/Object".
+ * @return The constant pool index.
+ */
+
+    public int classRef(String name) {
+        int nameIndex = utf8(name);
+        return constant("C" + name, 7, out -> out.writeShort(nameIndex), 1);
+    }
+
+/**
+ * Returns the constant pool index of a String constant, adding it if needed.
+ *
+ * @param value The string.
+ * @return The constant pool index.
+ */
+
+    public int string(String value) {
+        int valueIndex = utf8(value);
+        return constant("S" + value, 8, out -> out.writeShort(valueIndex), 1);
+    }
+
+/**
+ * Returns the constant pool index of a double constant, adding it if needed.
+ *
+ * @param value The number.
+ * @return The constant pool index.
+ */
+
+    public int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, 6, out -> out.writeLong(bits), 2);
+    }
+
+/**
+ * Returns the constant pool index of a long constant, adding it if needed.
+ *
+ * @param value The number.
+ * @return The constant pool index.
+ */
+
+    public int longConstant(long value) {
+        return constant("J" + value, 5, out -> out.writeLong(value), 2);
+    }
+
+/**
+ * Returns the constant pool index of a method reference, adding it if needed.
+ *
+ * @param owner The internal name of the class declaring the method.
+ * @param name The method name.
+ * @param descriptor The method descriptor.
+ * @return The constant pool index.
+ */
+
+    public int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+/**
+ * Returns the constant pool index of a field reference, adding it if needed.
+ *
+ * @param owner The internal name of the class declaring the field.
+ * @param name The field name.
+ * @param descriptor The field descriptor.
+ * @return The constant pool index.
+ */
+
+    public int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, 12, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        }, 1);
+        return constant(tag + owner + "." + name + ":" + descriptor, tag, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int constant(String key, int tag, Entry entry, int slots) {
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolData.writeByte(tag);
+            entry.write(poolData);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int added = poolCount;
+        poolCount += slots; // Long and double constants take two entries
+        if (poolCount > 0xFFFF) {
+            throw new IllegalStateException("Constant pool too large");
+        }
+        poolIndex.put(key, added);
+        return added;
+    }
+
+/**
+ * A position in a Code object that jumps can refer to before it is known.
+ */
+
+    public static final class Label {
+        private int position = -1;
+    }
+
+    private static final class Handler {
+        final Label start;
+        final Label end;
+        final Label handler;
+        final int catchType;
+
+        Handler(Label start, Label end, Label handler, int catchType) {
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+            this.catchType = catchType;
+        }
+    }
+
+/**
+ * The bytecode of one method, with its exception handlers.
+ */
+
+    public static final class Code {
+        private byte[] code = new byte[256];
+        private int length = 0;
+        private int maxStack = 0;
+        private int maxLocals = 0;
+        private final List<Label> fixupLabels = new ArrayList<>();
+        private final List<int[]> fixups = new ArrayList<>(); // {instruction offset, patch offset, size}
+        private final List<Handler> handlers = new ArrayList<>();
+
+/**
+ * Sets the stack depth and number of local variable slots the method needs.
+ *
+ * @param maxStack The maximum operand stack depth, in slots.
+ * @param maxLocals The number of local variable slots, parameters included.
+ */
+
+        public void setMaxs(int maxStack, int maxLocals) {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+/**
+ * Returns the number of bytes of code written so far.
+ *
+ * @return The code length.
+ */
+
+        public int length() {
+            return length;
+        }
+
+/**
+ * Appends an instruction without operands.
+ *
+ * @param opcode The opcode.
+ */
+
+        public void op(int opcode) {
+            u1(opcode);
+        }
+
+/**
+ * Appends an instruction with a 16-bit constant pool operand, such as
+ * invokevirtual, getfield, new or ldc2_w.
+ *
+ * @param opcode The opcode.
+ * @param index The constant pool index.
+ */
+
+        public void op(int opcode, int index) {
+            u1(opcode);
+            u2(index);
+        }
+
+/**
+ * Appends a newarray instruction, creating an array of a primitive type whose
+ * length is on the stack.
+ *
+ * @param type The element type, such as T_DOUBLE.
+ */
+
+        public void newArray(int type) {
+            u1(NEWARRAY);
+            u1(type);
+        }
+
+/**
+ * Appends a load or store of a local variable, using the wide form if needed.
+ *
+ * @param opcode One of ILOAD, DLOAD, ALOAD, ISTORE, DSTORE or ASTORE.
+ * @param local The local variable slot.
+ */
+
+        public void local(int opcode, int local) {
+            if (local > 0xFF) {
+                u1(WIDE);
+                u1(opcode);
+                u2(local);
+            } else {
+                u1(opcode);
+                u1(local);
+            }
+        }
+
+/**
+ * Appends an iinc instruction, using the wide form if needed.
+ *
+ * @param local The local variable slot.
+ * @param delta The amount to add.
+ */
+
+        public void iinc(int local, int delta) {
+            if (local > 0xFF || delta < -128 || delta > 127) {
+                u1(WIDE);
+                u1(IINC);
+                u2(local);
+                u2(delta);
+            } else {
+                u1(IINC);
+                u1(local);
+                u1(delta);
+            }
+        }
+
+/**
+ * Pushes a small int constant.
+ *
+ * @param value A value between -32768 and 32767.
+ */
+
+        public void pushInt(int value) {
+            if (value == 0 || value == 1) {
+                u1(value == 0 ? ICONST_0 : ICONST_1);
+            } else {
+                u1(SIPUSH);
+                u2(value);
+            }
+        }
+
+/**
+ * Appends a branch to a label.
+ *
+ * @param opcode A conditional branch or GOTO.
+ * @param target The label to jump to.
+ */
+
+        public void jump(int opcode, Label target) {
+            int at = length;
+            u1(opcode);
+            fixup(target, at, 2);
+            u2(0);
+        }
+
+/**
+ * Appends a tableswitch over the keys 0 to targets.length - 1. A table without
+ * keys, which the class file format does not allow, becomes a jump to the default.
+ *
+ * @param defaultTarget The label for keys outside the table.
+ * @param targets The label for each key.
+ */
+
+        public void tableSwitch(Label defaultTarget, Label[] targets) {
+            if (targets.length == 0) {
+                u1(POP);
+                jump(GOTO, defaultTarget);
+                return;
+            }
+            int at = length;
+            u1(TABLESWITCH);
+            while (length % 4 != 0) {
+                u1(0); // Padding to a four-byte boundary
+            }
+            fixup(defaultTarget, at, 4);
+            u4(0);
+            u4(0);
+            u4(targets.length - 1);
+            for (Label target : targets) {
+                fixup(target, at, 4);
+                u4(0);
+            }
+        }
+
+/**
+ * Places a label at the current position.
+ *
+ * @param label The label.
+ */
+
+        public void mark(Label label) {
+            label.position = length;
+        }
+
+/**
+ * Adds an exception handler.
+ *
+ * @param start The first instruction covered.
+ * @param end The position after the last instruction covered.
+ * @param handler The start of the handler code.
+ * @param catchType The constant pool index of the caught class.
+ */
+
+        public void handler(Label start, Label end, Label handler, int catchType) {
+            handlers.add(new Handler(start, end, handler, catchType));
+        }
+
+        private void fixup(Label target, int instruction, int size) {
+            fixupLabels.add(target);
+            fixups.add(new int[] {instruction, length, size});
+        }
+
+        private byte[] toByteArray() {
+            for (int i = 0; i < fixups.size(); i++) {
+                int[] fixup = fixups.get(i);
+                int position = fixupLabels.get(i).position;
+                if (position < 0) {
+                    throw new IllegalStateException("Jump to a label that was never placed");
+                }
+                int offset = position - fixup[0];
+                if (fixup[2] == 2) {
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new IllegalStateException("Method too large for 16-bit jumps");
+                    }
+                    code[fixup[1]] = (byte) (offset >> 8);
+                    code[fixup[1] + 1] = (byte) offset;
+                } else {
+                    code[fixup[1]] = (byte) (offset >> 24);
+                    code[fixup[1] + 1] = (byte) (offset >> 16);
+                    code[fixup[1] + 2] = (byte) (offset >> 8);
+                    code[fixup[1] + 3] = (byte) offset;
+                }
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(code, 0, length);
+                out.writeShort(handlers.size());
+                for (Handler handler : handlers) {
+                    out.writeShort(handler.start.position);
+                    out.writeShort(handler.end.position);
+                    out.writeShort(handler.handler.position);
+                    out.writeShort(handler.catchType);
+                }
+                out.writeShort(0); // Attributes
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private void u1(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        private void u4(int value) {
+            u2(value >> 16);
+            u2(value);
+        }
+    }
+}
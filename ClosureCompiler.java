@@ -0,0 +1,340 @@
+import java.util.function.DoubleSupplier;
+
+/**
+ *
+ * CLOSURECOMPILER.JAVA
+ *
+ * The ClosureCompiler class turns a Program into a tree of small pre-bound
+ * objects: every expression becomes a DoubleSupplier and every instruction a
+ * Statement. Building the tree takes one pass over the program, so it costs about
+ * as much as parsing it, yet running it skips the decoding the interpreter loop
+ * does for every instruction and every expression operator.
+ *
+ * The nodes are bound to one Model and its variable arrays, and are specialized
+ * by operand kind. A binary operator with a constant or a variable slot as its
+ * operand reads that operand directly instead of through another node, which
+ * covers the common shapes "v + 1", "v * k" and "56 * (...)". Other operands
+ * are nested nodes.
+ *
+ * Statements behave exactly like the interpreter: output goes through the Model's
+ * print methods, and an expression that fails is reported through
+ * Model.statementFailed() with the interpreter's message.
+ */
+
+public final class ClosureCompiler {
+
+/**
+ * One compiled instruction.
+ */
+
+    interface Statement {
+
+/**
+ * Executes the instruction.
+ *
+ * @return The index of the next instruction; the program size ends the program.
+ */
+
+        int execute();
+    }
+
+    private final Model model;
+    private final Program program;
+    private final double[] frame;
+    private final boolean[] defined;
+
+    private ClosureCompiler(Model model, Program program, double[] frame, boolean[] defined) {
+        this.model = model;
+        this.program = program;
+        this.frame = frame;
+        this.defined = defined;
+    }
+
+/**
+ * Compiles every instruction of a program into a Statement.
+ *
+ * @param model The Model whose print methods the statements call.
+ * @param program The program to compile.
+ * @param frame The variable values the statements read and write.
+ * @param defined Whether each variable has been assigned.
+ * @return One statement per instruction.
+ */
+
+    static Statement[] compile(Model model, Program program, double[] frame, boolean[] defined) {
+        program = program.plain(); // Its nodes already specialize what the fused instructions do
+        ClosureCompiler compiler = new ClosureCompiler(model, program, frame, defined);
+        Statement[] statements = new Statement[program.size()];
+        for (int index = 0; index < statements.length; index++) {
+            statements[index] = compiler.statement(index);
+        }
+        return statements;
+    }
+
+    private Statement statement(int index) {
+        Model model = this.model;
+        double[] frame = this.frame;
+        boolean[] defined = this.defined;
+        int[] code = program.code;
+        int pc = index * Program.WIDTH;
+        int next = index + 1;
+        int end = program.size();
+
+        switch (code[pc]) {
+            case Opcode.NOP:
+                return () -> next;
+            case Opcode.PRINT: {
+                DoubleSupplier expression = expression(program.expressions[code[pc + 1]]);
+                String prefix = Model.errorPrefix(program, index);
+                return () -> {
+                    double value;
+                    try {
+                        value = expression.getAsDouble();
+                    } catch (IllegalArgumentException e) {
+                        return model.statementFailed(prefix, e) ? next : end;
+                    }
+                    return model.printValue(value) ? next : end;
+                };
+            }
+            case Opcode.ASSIGN: {
+                int slot = code[pc + 1];
+                String name = program.symbols.name(slot);
+                DoubleSupplier expression = expression(program.expressions[code[pc + 2]]);
+                String prefix = Model.errorPrefix(program, index);
+                return () -> {
+                    double value;
+                    try {
+                        value = expression.getAsDouble();
+                    } catch (IllegalArgumentException e) {
+                        return model.statementFailed(prefix, e) ? next : end;
+                    }
+                    frame[slot] = value;
+                    defined[slot] = true;
+                    return model.printAssignment(name, value) ? next : end;
+                };
+            }
+            case Opcode.IF_EQ:
+            case Opcode.IF_GT:
+            case Opcode.IF_LT:
+            case Opcode.IF_GE:
+            case Opcode.IF_LE:
+                return condition(index, code[pc], expression(program.expressions[code[pc + 1]]),
+                        expression(program.expressions[code[pc + 2]]), code[pc + 3]);
+            case Opcode.GOTO: {
+                int target = code[pc + 1];
+                return () -> target;
+            }
+            case Opcode.END:
+                return () -> end;
+            case Opcode.ERROR: {
+                String message = program.strings[code[pc + 1]];
+                return () -> model.printMessage(message) ? next : end;
+            }
+            default:
+                throw new IllegalStateException("Unknown opcode: " + code[pc]);
+        }
+    }
+
+    private Statement condition(int index, int opcode, DoubleSupplier left, DoubleSupplier right, int target) {
+        Model model = this.model;
+        String prefix = Model.errorPrefix(program, index);
+        int next = index + 1;
+        int end = program.size();
+        switch (opcode) {
+            case Opcode.IF_EQ:
+                return () -> {
+                    try {
+                        return left.getAsDouble() == right.getAsDouble() ? target : next;
+                    } catch (IllegalArgumentException e) {
+                        return model.statementFailed(prefix, e) ? next : end;
+                    }
+                };
+            case Opcode.IF_GT:
+                return () -> {
+                    try {
+                        return left.getAsDouble() > right.getAsDouble() ? target : next;
+                    } catch (IllegalArgumentException e) {
+                        return model.statementFailed(prefix, e) ? next : end;
+                    }
+                };
+            case Opcode.IF_LT:
+                return () -> {
+                    try {
+                        return left.getAsDouble() < right.getAsDouble() ? target : next;
+                    } catch (IllegalArgumentException e) {
+                        return model.statementFailed(prefix, e) ? next : end;
+                    }
+                };
+            case Opcode.IF_GE:
+                return () -> {
+                    try {
+                        return left.getAsDouble() >= right.getAsDouble() ? target : next;
+                    } catch (IllegalArgumentException e) {
+                        return model.statementFailed(prefix, e) ? next : end;
+                    }
+                };
+            default:
+                return () -> {
+                    try {
+                        return left.getAsDouble() <= right.getAsDouble() ? target : next;
+                    } catch (IllegalArgumentException e) {
+                        return model.statementFailed(prefix, e) ? next : end;
+                    }
+                };
+        }
+    }
+
+/**
+ * An operand of an operator while an expression is being built: a constant, a
+ * variable slot, or a node for a subexpression.
+ */
+
+    private static final class Operand {
+        final DoubleSupplier node; // Null for constants and slots
+        final int slot;            // -1 unless the operand is a variable
+        final double constant;
+
+        Operand(DoubleSupplier node, int slot, double constant) {
+            this.node = node;
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        boolean isConstant() {
+            return node == null && slot < 0;
+        }
+    }
+
+    private DoubleSupplier expression(Expression expression) {
+        if (expression.error != null) {
+            String error = expression.error;
+            return () -> {
+                throw new IllegalArgumentException(error);
+            };
+        }
+        int[] code = expression.code;
+        Operand[] stack = new Operand[expression.maxStack()];
+        int sp = 0;
+        int pc = 0;
+        while (pc < code.length) {
+            int op = code[pc++];
+            switch (op) {
+                case Expression.CONST:
+                    stack[sp++] = new Operand(null, -1, expression.constants[code[pc++]]);
+                    break;
+                case Expression.LOAD:
+                    stack[sp++] = new Operand(null, code[pc++], 0);
+                    break;
+                case Expression.ADD:
+                case Expression.SUB:
+                case Expression.MUL:
+                case Expression.DIV: {
+                    Operand right = stack[--sp];
+                    Operand left = stack[--sp];
+                    stack[sp++] = new Operand(binary(op, left, right), -1, 0);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown expression opcode: " + op);
+            }
+        }
+        return node(stack[0]);
+    }
+
+    private DoubleSupplier node(Operand operand) {
+        if (operand.node != null) {
+            return operand.node;
+        }
+        if (operand.isConstant()) {
+            double constant = operand.constant;
+            return () -> constant;
+        }
+        double[] frame = this.frame;
+        boolean[] defined = this.defined;
+        int slot = operand.slot;
+        String undefined = undefinedMessage(slot);
+        return () -> {
+            if (!defined[slot]) {
+                throw new IllegalArgumentException(undefined);
+            }
+            return frame[slot];
+        };
+    }
+
+    private DoubleSupplier binary(int op, Operand left, Operand right) {
+        if (left.slot >= 0 && right.isConstant()) {
+            return slotConstant(op, left.slot, right.constant);
+        }
+        if (right.isConstant()) {
+            return nodeConstant(op, node(left), right.constant);
+        }
+        if (left.isConstant()) {
+            return constantNode(op, left.constant, node(right));
+        }
+        DoubleSupplier l = node(left);
+        DoubleSupplier r = node(right);
+        switch (op) {
+            case Expression.ADD: return () -> l.getAsDouble() + r.getAsDouble();
+            case Expression.SUB: return () -> l.getAsDouble() - r.getAsDouble();
+            case Expression.MUL: return () -> l.getAsDouble() * r.getAsDouble();
+            default: return () -> l.getAsDouble() / r.getAsDouble();
+        }
+    }
+
+    private DoubleSupplier slotConstant(int op, int slot, double k) {
+        double[] frame = this.frame;
+        boolean[] defined = this.defined;
+        String undefined = undefinedMessage(slot);
+        switch (op) {
+            case Expression.ADD:
+                return () -> {
+                    if (!defined[slot]) {
+                        throw new IllegalArgumentException(undefined);
+                    }
+                    return frame[slot] + k;
+                };
+            case Expression.SUB:
+                return () -> {
+                    if (!defined[slot]) {
+                        throw new IllegalArgumentException(undefined);
+                    }
+                    return frame[slot] - k;
+                };
+            case Expression.MUL:
+                return () -> {
+                    if (!defined[slot]) {
+                        throw new IllegalArgumentException(undefined);
+                    }
+                    return frame[slot] * k;
+                };
+            default:
+                return () -> {
+                    if (!defined[slot]) {
+                        throw new IllegalArgumentException(undefined);
+                    }
+                    return frame[slot] / k;
+                };
+        }
+    }
+
+    private static DoubleSupplier nodeConstant(int op, DoubleSupplier l, double k) {
+        switch (op) {
+            case Expression.ADD: return () -> l.getAsDouble() + k;
+            case Expression.SUB: return () -> l.getAsDouble() - k;
+            case Expression.MUL: return () -> l.getAsDouble() * k;
+            default: return () -> l.getAsDouble() / k;
+        }
+    }
+
+    private static DoubleSupplier constantNode(int op, double k, DoubleSupplier r) {
+        switch (op) {
+            case Expression.ADD: return () -> k + r.getAsDouble();
+            case Expression.SUB: return () -> k - r.getAsDouble();
+            case Expression.MUL: return () -> k * r.getAsDouble();
+            default: return () -> k / r.getAsDouble();
+        }
+    }
+
+    private String undefinedMessage(int slot) {
+        return "Undefined variable: " + program.symbols.name(slot);
+    }
+}
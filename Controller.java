@@ -7,6 +7,8 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import javax.swing.JFileChooser;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 /**
  * 
@@ -16,11 +18,17 @@ import javax.swing.JFileChooser;
  * the interaction between the user interface and program logic.
  * It handles user actions such as running code, loading and saving files, 
  * and resetting or displaying information.
+ *
+ * Programs run on a background thread so the window stays responsive; their
+ * output and step count are shown while they run, and they can be stopped.
  */
 
 public class Controller {
+    private static final int PROGRESS_INTERVAL_MS = 100;
+
     private View view;
     private Model model;
+    private ProgramWorker worker; // The running program, or null when idle
 
 /**
 * Initializes the controller with references to the view and model.
@@ -36,6 +44,7 @@ public class Controller {
 
         // Set up listeners for the buttons in the view
         view.addRunButtonListener(new RunButtonListener());
+        view.addStopButtonListener(new StopButtonListener());
         view.addLoadButtonListener(new LoadButtonListener());
         view.addSaveButtonListener(new SaveButtonListener());
         view.addResetButtonListener(new ResetButtonListener());
@@ -54,22 +63,86 @@ public class Controller {
     }
 
 /**
-* Executes the code entered in the view by loading it into the model,
-* running it, and displaying the output in a separate output window.
+* Executes the code entered in the view by loading it into the model and
+* starting it on a background thread. The output window is shown right away
+* and filled while the program runs.
 */
 
     private void runCode() {
-        System.out.println("Running code from view...");
-        
+        if (worker != null) {
+            return; // A program is already running
+        }
+
         // Get the code from the view
         String code = view.getCodeInput();
         
-        model.loadProgram(code);           // Load the program into Model
-        model.runProgram();                // Execute the loaded program
-        String output = model.getOutput(); 
-        view.showOutput(output);           
-        
-        System.out.println("Run completed. Output displayed.");
+        try {
+            model.loadProgram(code);       // Load the program into Model
+        } catch (IllegalArgumentException ex) {
+            view.displayError(ex.getMessage()); // e.g. a "goto" to a line that does not exist
+            return;
+        }
+
+        OutputChannel channel = new OutputChannel();
+        view.startOutput(channel);
+        view.setStatus("Running...");
+        view.setRunning(true);
+        worker = new ProgramWorker(channel);
+        worker.execute();                  // Execute the loaded program in the background
+    }
+
+/**
+* Inner class for handling the "Stop" button action.
+* When the "Stop" button is pressed, it asks the running program to stop.
+*/
+
+    private class StopButtonListener implements ActionListener {
+        public void actionPerformed(ActionEvent e) {
+            model.cancel();
+        }
+    }
+
+/**
+* Runs the loaded program on a background thread. The model streams its output
+* into an OutputChannel that the view drains; a timer shows the step count while
+* the program runs.
+*/
+
+    private class ProgramWorker extends SwingWorker<Void, Void> {
+        private final OutputChannel channel;
+        private final Timer progressTimer = new Timer(PROGRESS_INTERVAL_MS,
+                e -> view.setStatus("Running... " + model.getStepCount() + " steps"));
+
+        ProgramWorker(OutputChannel channel) {
+            this.channel = channel;
+            progressTimer.start();
+        }
+
+        @Override
+        protected Void doInBackground() {
+            model.setOutputSink(channel);
+            try {
+                model.runProgram();
+            } finally {
+                model.setOutputSink(null);
+                channel.close();
+            }
+            return null;
+        }
+
+        @Override
+        protected void done() {
+            progressTimer.stop();
+            worker = null;
+            view.setRunning(false);
+            try {
+                get();
+                view.setStatus("Finished after " + model.getStepCount() + " steps");
+            } catch (Exception ex) {
+                view.setStatus("Failed");
+                view.displayError("Error running program: " + ex.getMessage());
+            }
+        }
     }
     
 /**
@@ -132,6 +205,7 @@ public class Controller {
 
     private class ResetButtonListener implements ActionListener {
         public void actionPerformed(ActionEvent e) {
+            model.cancel(); // Stop a running program before clearing its output
             view.clearCodeInput();
             view.clearOutput();
         }
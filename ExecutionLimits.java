@@ -0,0 +1,92 @@
+/**
+ *
+ * EXECUTIONLIMITS.JAVA
+ *
+ * The ExecutionLimits class describes how much a single run of a program may
+ * consume before the Model stops it: a number of executed instructions, an amount
+ * of wall-clock time and an amount of output. Any limit can be set to UNLIMITED.
+ *
+ * The Model enforces the instruction and time limits in slices of CHECK_INTERVAL
+ * instructions. Inside a slice it only decrements a counter, and the clock is read
+ * once per slice, so even a budget of billions of instructions costs almost
+ * nothing to enforce. The output limit is checked whenever a line is written.
+ */
+
+public final class ExecutionLimits {
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    /** Number of instructions executed between two time checks. */
+    public static final int CHECK_INTERVAL = 16384;
+
+    /** Limits used when none are given: generous, but still catches endless loops. */
+    public static final ExecutionLimits DEFAULT = new ExecutionLimits(100_000_000L, 10_000L, 1_000_000L);
+
+    /** No limits at all; the program runs until it ends. */
+    public static final ExecutionLimits NONE = new ExecutionLimits(UNLIMITED, UNLIMITED, UNLIMITED);
+
+    private final long maxInstructions;
+    private final long timeLimitMillis;
+    private final long maxOutputBytes;
+
+/**
+ * Creates a set of execution limits.
+ *
+ * @param maxInstructions The number of instructions a run may execute.
+ * @param timeLimitMillis The wall-clock time a run may take, in milliseconds.
+ * @param maxOutputBytes The number of bytes of output a run may produce.
+ * @throws IllegalArgumentException if a limit is negative.
+ */
+
+    public ExecutionLimits(long maxInstructions, long timeLimitMillis, long maxOutputBytes) {
+        if (maxInstructions < 0 || timeLimitMillis < 0 || maxOutputBytes < 0) {
+            throw new IllegalArgumentException("Execution limits must not be negative");
+        }
+        this.maxInstructions = maxInstructions;
+        this.timeLimitMillis = timeLimitMillis;
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+/**
+ * Returns the number of instructions a run may execute.
+ *
+ * @return The instruction budget, or UNLIMITED.
+ */
+
+    public long getMaxInstructions() {
+        return maxInstructions;
+    }
+
+/**
+ * Returns the wall-clock time a run may take.
+ *
+ * @return The time limit in milliseconds, or UNLIMITED.
+ */
+
+    public long getTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+/**
+ * Returns the number of bytes of output a run may produce.
+ *
+ * @return The output limit, or UNLIMITED.
+ */
+
+    public long getMaxOutputBytes() {
+        return maxOutputBytes;
+    }
+
+/**
+ * Returns the System.nanoTime() value at which a run started now has to stop.
+ *
+ * @param startNanos The System.nanoTime() value when the run started.
+ * @return The deadline, or Long.MAX_VALUE if there is no time limit.
+ */
+
+    long deadline(long startNanos) {
+        if (timeLimitMillis >= Long.MAX_VALUE / 1_000_000L) {
+            return Long.MAX_VALUE;
+        }
+        return startNanos + timeLimitMillis * 1_000_000L;
+    }
+}
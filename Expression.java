@@ -0,0 +1,378 @@
+import java.util.Arrays;
+
+/**
+ *
+ * EXPRESSION.JAVA
+ *
+ * The Expression class holds an arithmetic expression that has been parsed once
+ * at load time into postfix code. Numbers are converted to doubles and variable
+ * names are resolved to slots in the SymbolTable while parsing, so the Model can
+ * evaluate the expression with a plain loop over ints and a preallocated stack,
+ * without looking at the source text or allocating anything.
+ *
+ * An expression with a syntax error still compiles; it keeps the error message
+ * and reports it each time it is evaluated, like the interpreter always has.
+ */
+
+public final class Expression {
+    public static final int CONST = 0; // constant index: push constants[index]
+    public static final int LOAD = 1;  // slot: push the value of a variable
+    public static final int ADD = 2;
+    public static final int SUB = 3;
+    public static final int MUL = 4;
+    public static final int DIV = 5;
+
+    final String source;
+    final int[] code;
+    final double[] constants;
+    final int maxStack;
+    final String error;
+
+    private Expression(String source, int[] code, double[] constants, int maxStack, String error) {
+        this.source = source;
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+        this.error = error;
+    }
+
+/**
+ * Parses the expression text into postfix code. The grammar is the one the
+ * interpreter has always accepted: sums of products of numbers, variables and
+ * parenthesized expressions.
+ *
+ * @param source The expression text to parse.
+ * @param symbols The symbol table that assigns slots to variable names.
+ * @return The compiled expression, carrying an error message if the text is invalid.
+ */
+
+    public static Expression compile(String source, SymbolTable symbols) {
+        ExpressionParser parser = new ExpressionParser(source, symbols);
+        try {
+            parser.parseExpression();
+            parser.skipWhitespace();
+            if (parser.pos < source.length()) {
+                throw new IllegalArgumentException("Unexpected token at position: " + parser.pos);
+            }
+        } catch (IllegalArgumentException e) {
+            return new Expression(source, new int[0], new double[0], 0, e.getMessage());
+        }
+        return new Expression(source, Arrays.copyOf(parser.code, parser.size),
+                Arrays.copyOf(parser.constants, parser.constantCount), parser.maxDepth, null);
+    }
+
+/**
+ * Returns the number of stack entries needed to evaluate the expression.
+ *
+ * @return The maximum stack depth.
+ */
+
+    public int maxStack() {
+        return maxStack;
+    }
+
+/**
+ * Returns whether the expression reads any variable, and so can fail on an
+ * unassigned one.
+ *
+ * @return True if the postfix code contains a LOAD.
+ */
+
+    public boolean readsVariables() {
+        for (int pc = 0; pc < code.length; pc += 2) {
+            if (code[pc] == LOAD) {
+                return true;
+            }
+            if (code[pc] != CONST) {
+                pc--; // Operators have no operand
+            }
+        }
+        return false;
+    }
+
+/**
+ * Returns whether the expression is a single constant.
+ *
+ * @return True if evaluating the expression only pushes one constant.
+ */
+
+    boolean isConstant() {
+        return code.length == 2 && code[0] == CONST;
+    }
+
+/**
+ * Returns a copy of the expression with its constant parts computed once. Every
+ * operator whose operands are both constants is replaced by its result, variables
+ * whose value is known are replaced by that value, and the operations that cannot
+ * change a double are dropped: x * 1, 1 * x, x / 1, x - 0 and x + -0.0. Division
+ * by a power of two becomes multiplication by its reciprocal, which is exact.
+ * "x + 0" is kept, since it turns -0.0 into 0.0. The result always evaluates to
+ * the same double as the expression; the source text is kept for tracing.
+ *
+ * @param known Which variables hold a known value, by slot.
+ * @param values The known values, by slot.
+ * @return The simplified expression, or this expression if nothing changed.
+ */
+
+    Expression simplify(boolean[] known, double[] values) {
+        if (error != null) {
+            return this;
+        }
+        Node[] stack = new Node[maxStack];
+        int sp = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            int op = code[pc];
+            if (op == CONST) {
+                stack[sp++] = Node.constant(constants[code[++pc]]);
+            } else if (op == LOAD) {
+                int slot = code[++pc];
+                stack[sp++] = slot < known.length && known[slot]
+                        ? Node.constant(values[slot]) : new Node(LOAD, slot, 0, null, null);
+            } else {
+                Node right = stack[--sp];
+                Node left = stack[--sp];
+                stack[sp++] = Node.binary(op, left, right);
+            }
+        }
+        ExpressionParser emitter = new ExpressionParser(source, null);
+        stack[0].emit(emitter);
+        int[] newCode = Arrays.copyOf(emitter.code, emitter.size);
+        double[] newConstants = Arrays.copyOf(emitter.constants, emitter.constantCount);
+        if (Arrays.equals(newCode, code) && Arrays.equals(newConstants, constants)) {
+            return this;
+        }
+        return new Expression(source, newCode, newConstants, emitter.maxDepth, null);
+    }
+
+/**
+ * A node of an expression tree being simplified: a constant, a variable load or
+ * a binary operator.
+ */
+
+    private static final class Node {
+        final int op;
+        final int slot;
+        final double value;
+        final Node left;
+        final Node right;
+
+        Node(int op, int slot, double value, Node left, Node right) {
+            this.op = op;
+            this.slot = slot;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+
+        static Node constant(double value) {
+            return new Node(CONST, -1, value, null, null);
+        }
+
+        boolean is(double constant) {
+            return op == CONST && Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(constant);
+        }
+
+        static Node binary(int op, Node left, Node right) {
+            if (left.op == CONST && right.op == CONST) {
+                switch (op) {
+                    case ADD: return constant(left.value + right.value);
+                    case SUB: return constant(left.value - right.value);
+                    case MUL: return constant(left.value * right.value);
+                    default: return constant(left.value / right.value);
+                }
+            }
+            switch (op) {
+                case ADD:
+                    if (right.is(-0.0)) {
+                        return left;
+                    }
+                    if (left.is(-0.0)) {
+                        return right;
+                    }
+                    break;
+                case SUB:
+                    if (right.is(0.0)) {
+                        return left;
+                    }
+                    break;
+                case MUL:
+                    if (right.is(1.0)) {
+                        return left;
+                    }
+                    if (left.is(1.0)) {
+                        return right;
+                    }
+                    break;
+                default:
+                    if (right.is(1.0)) {
+                        return left;
+                    }
+                    if (right.op == CONST && hasExactReciprocal(right.value)) {
+                        return new Node(MUL, -1, 0, left, constant(1.0 / right.value));
+                    }
+                    break;
+            }
+            return new Node(op, -1, 0, left, right);
+        }
+
+        void emit(ExpressionParser emitter) {
+            if (op == CONST) {
+                emitter.emitConstant(value);
+            } else if (op == LOAD) {
+                emitter.emit(LOAD, slot);
+            } else {
+                left.emit(emitter);
+                right.emit(emitter);
+                emitter.emit(op, -1);
+            }
+        }
+    }
+
+/**
+ * Tells whether x / divisor equals x * (1 / divisor) for every x. That holds when
+ * the reciprocal is exact, that is when the divisor is a power of two whose
+ * reciprocal does not overflow.
+ */
+
+    private static boolean hasExactReciprocal(double divisor) {
+        return divisor != 0 && !Double.isInfinite(divisor) && !Double.isNaN(divisor)
+                && Math.abs(divisor) == Math.scalb(1.0, Math.getExponent(divisor))
+                && !Double.isInfinite(1.0 / divisor);
+    }
+
+/**
+ * Returns the source text of the expression.
+ *
+ * @return The expression as it was written in the program.
+ */
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+/**
+ * Recursive descent parser that emits postfix code while reading the source.
+ */
+
+    private static class ExpressionParser {
+        final String source;
+        final SymbolTable symbols;
+        int pos = 0;
+        int[] code = new int[16];
+        int size = 0;
+        double[] constants = new double[8];
+        int constantCount = 0;
+        int depth = 0;
+        int maxDepth = 0;
+
+        ExpressionParser(String source, SymbolTable symbols) {
+            this.source = source;
+            this.symbols = symbols;
+        }
+
+        void parseExpression() {
+            parseTerm(); // Start with a term to handle higher precedence operations first
+            while (true) {
+                skipWhitespace();
+                if (peek() == '+') {
+                    pos++;
+                    parseTerm();
+                    emit(ADD, -1);
+                } else if (peek() == '-') {
+                    pos++;
+                    parseTerm();
+                    emit(SUB, -1);
+                } else {
+                    return;
+                }
+            }
+        }
+
+        void parseTerm() {
+            parseFactor(); // Start with a factor to handle parentheses
+            while (true) {
+                skipWhitespace();
+                if (peek() == '*') {
+                    pos++;
+                    parseFactor();
+                    emit(MUL, -1);
+                } else if (peek() == '/') {
+                    pos++;
+                    parseFactor();
+                    emit(DIV, -1);
+                } else {
+                    return;
+                }
+            }
+        }
+
+        void parseFactor() {
+            skipWhitespace();
+            if (pos >= source.length()) {
+                throw new IllegalArgumentException("Unexpected end of expression");
+            }
+
+            char ch = source.charAt(pos);
+            int start = pos;
+            if (ch == '(') {
+                pos++;
+                parseExpression(); // Parse the expression inside parentheses
+                skipWhitespace();
+                if (peek() == ')') {
+                    pos++; // Move past the closing ')'
+                }
+            } else if (Character.isDigit(ch) || ch == '.') {
+                while (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) {
+                    pos++;
+                }
+                double value;
+                try {
+                    value = Double.parseDouble(source.substring(start, pos));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid factor at position: " + start);
+                }
+                emitConstant(value);
+            } else if (Character.isLetter(ch)) {
+                while (pos < source.length() && Character.isLetter(source.charAt(pos))) {
+                    pos++;
+                }
+                emit(LOAD, symbols.slotOf(source.substring(start, pos)));
+            } else {
+                throw new IllegalArgumentException("Invalid factor at position: " + start);
+            }
+        }
+
+        void skipWhitespace() {
+            while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        char peek() {
+            return pos < source.length() ? source.charAt(pos) : '\0';
+        }
+
+        void emitConstant(double value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            emit(CONST, constantCount++);
+        }
+
+        void emit(int op, int operand) {
+            if (size + 2 > code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[size++] = op;
+            if (operand >= 0) {
+                code[size++] = operand;
+                depth++; // CONST and LOAD push a value
+                maxDepth = Math.max(maxDepth, depth);
+            } else {
+                depth--; // Binary operators pop two values and push one
+            }
+        }
+    }
+}
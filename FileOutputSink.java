@@ -0,0 +1,64 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *
+ * FILEOUTPUTSINK.JAVA
+ *
+ * The FileOutputSink class writes program output to a FileChannel: a file, or
+ * stdout for the headless runner. The Model's output buffer is a direct buffer,
+ * so its bytes go to the channel without being copied on the Java heap.
+ */
+
+public final class FileOutputSink implements OutputSink {
+    private final FileChannel channel;
+    private final boolean closeChannel;
+
+    private FileOutputSink(FileChannel channel, boolean closeChannel) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+    }
+
+/**
+ * Creates a sink that writes to a file, replacing its contents.
+ *
+ * @param path The file to write the output to.
+ * @return The sink.
+ * @throws IOException if the file cannot be opened.
+ */
+
+    public static FileOutputSink open(Path path) throws IOException {
+        return new FileOutputSink(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), true);
+    }
+
+/**
+ * Creates a sink that writes to the standard output of the process, bypassing
+ * System.out and its locking. Closing the sink leaves stdout open.
+ *
+ * @return The sink.
+ */
+
+    public static FileOutputSink stdout() {
+        return new FileOutputSink(new FileOutputStream(FileDescriptor.out).getChannel(), false);
+    }
+
+    @Override
+    public void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeChannel) {
+            channel.close();
+        }
+    }
+}
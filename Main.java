@@ -1,29 +1,308 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
- * 
+ *
  * MAIN.JAVA - WRITTEN BY AARON KIAH - LAST UPDATE (NOV. 7, 2024)
- * 
+ *
  * The Main class serves as the entry point for the BASIC interpreter program.
- * It initializes the View, Model, and Controller components, setting up the 
+ * It initializes the View, Model, and Controller components, setting up the
  * MVC (Model-View-Controller) structure for the application.
+ *
+ * Started as "java Main run file.bas", it instead runs the program headless:
+ * only the Model is used, output is streamed to stdout and no AWT or Swing
+ * class is ever loaded. "java Main compile file.bas -o file.jar" compiles the
+ * program ahead of time into a jar that runs it without the interpreter.
  */
 
 public class Main {
-    
+    private static final String USAGE = String.join("\n",
+            "Usage: java Main                        start the interpreter window",
+            "       java Main run <file> [options]   run a program and print its output",
+            "       java Main compile <file> [-o <jar>] [--basic-numbers]",
+            "                                        compile a program into a runnable jar",
+            "",
+            "Options:",
+            "  --max-steps <n>       stop after n instructions",
+            "  --time-limit <ms>     stop after ms milliseconds",
+            "  --max-output <n>      stop after n bytes of output",
+            "  --output <file>       write the output to a file instead of stdout",
+            "  --basic-numbers       print integer values as 5 instead of 5.0",
+            "  --tier <tier>         how to run the program: interpreter, closures, bytecode or tiered",
+            "  --tier-threshold <n>  loop iterations before the tiered mode compiles (default 10000)",
+            "  --compile             same as --tier bytecode",
+            "  --trace <level>       trace to stderr: off, statement, expression or verbose",
+            "  --profile-opcodes <file>",
+            "                        count the instruction pairs run, report them on stderr and",
+            "                        add them to the counts in file (interprets the program)",
+            "  --superinstructions <file>",
+            "                        fuse the pairs run most often in a profile file into",
+            "                        superinstructions of the interpreter",
+            "",
+            "Limits default to those of the window: 100000000 instructions, 10000 ms and",
+            "1000000 bytes of output. Give 'unlimited' as the value to lift one of them.");
+
 /**
 * The main method creates instances of the View and Model, then
 * instantiates the Controller to link them. This setup initiates
 * the BASIC interpreter's user interface and backend logic.
 *
-* @param args Command-line arguments (not used in this program).
+* @param args Command-line arguments: none for the user interface, or
+*             "run" followed by a file name and options for headless mode, or
+*             "compile" followed by a file name and options to write a jar.
 */
     public static void main(String[] args) {
+        if (args.length == 0) {
+            startGui();
+        } else if (args[0].equals("run")) {
+            System.exit(runHeadless(args));
+        } else if (args[0].equals("compile")) {
+            System.exit(compileToJar(args));
+        } else {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+    }
+
+/**
+* Creates the View, Model and Controller of the interpreter window. This is
+* the only place that touches Swing, so headless runs never load it.
+*/
+
+    private static void startGui() {
         // Create instances of the View and Model
         View view = new View();
         Model model = new Model();
+        model.setBasicNumbers(Boolean.getBoolean("basic.numbers")); // -Dbasic.numbers=true prints 5, not 5.0
+        model.setTier(Tier.parse(System.getProperty("basic.tier", "interpreter"))); // e.g. -Dbasic.tier=bytecode
+
+        // Tracing is off unless requested, e.g. -Dbasic.trace=statement
+        String traceLevel = System.getProperty("basic.trace");
+        if (traceLevel != null) {
+            model.setTrace(new Trace(Trace.parseLevel(traceLevel), new AsyncTraceSink(System.out)));
+        }
 
         // Create the Controller, passing the View and Model
         Controller controller = new Controller(view, model);
+    }
+
+/**
+* Runs a program file without a user interface, streaming its output to stdout
+* or to the file given with --output.
+*
+* @param args The command-line arguments, starting with "run".
+* @return The process exit code: 0 on success, 1 if the program could not be
+*         loaded or its output could not be written, 2 for invalid arguments.
+*/
+
+    private static int runHeadless(String[] args) {
+        String file = null;
+        String outputFile = null;
+        long maxSteps = ExecutionLimits.DEFAULT.getMaxInstructions();
+        long timeLimit = ExecutionLimits.DEFAULT.getTimeLimitMillis();
+        long maxOutput = ExecutionLimits.DEFAULT.getMaxOutputBytes();
+        int traceLevel = Trace.OFF;
+        boolean basicNumbers = false;
+        int tier = Tier.INTERPRETER;
+        int tierThreshold = 0;
+        String profileFile = null;
+        String superinstructionsFile = null;
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--max-steps": maxSteps = parseLimit(args[++i]); break;
+                    case "--time-limit": timeLimit = parseLimit(args[++i]); break;
+                    case "--max-output": maxOutput = parseLimit(args[++i]); break;
+                    case "--trace": traceLevel = Trace.parseLevel(args[++i]); break;
+                    case "--output": outputFile = args[++i]; break;
+                    case "--basic-numbers": basicNumbers = true; break;
+                    case "--tier": tier = Tier.parse(args[++i]); break;
+                    case "--compile": tier = Tier.BYTECODE; break;
+                    case "--tier-threshold": tierThreshold = parseThreshold(args[++i]); break;
+                    case "--profile-opcodes": profileFile = args[++i]; break;
+                    case "--superinstructions": superinstructionsFile = args[++i]; break;
+                    default:
+                        if (args[i].startsWith("--") || file != null) {
+                            throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                        }
+                        file = args[i];
+                        break;
+                }
+            }
+            if (file == null) {
+                throw new IllegalArgumentException("No program file given");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        String code;
+        try {
+            code = Files.readString(Paths.get(file));
+        } catch (IOException e) {
+            System.err.println("Error loading file: " + e.getMessage());
+            return 1;
+        }
+
+        Model model = new Model();
+        Trace trace = traceLevel == Trace.OFF ? Trace.NONE : new Trace(traceLevel, new AsyncTraceSink(System.err));
+        model.setTrace(trace);
+        model.setBasicNumbers(basicNumbers);
+        model.setTier(tier);
+        if (tierThreshold != 0) {
+            model.setTierThreshold(tierThreshold);
+        }
+        OpcodeProfile profile = profileFile == null ? null : new OpcodeProfile();
+        model.setOpcodeProfile(profile);
+        try {
+            if (superinstructionsFile != null) {
+                model.setSuperinstructions(OpcodeProfile.load(Paths.get(superinstructionsFile)));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error loading opcode profile: " + e.getMessage());
+            trace.close();
+            return 1;
+        }
+        try {
+            model.loadProgram(code);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            trace.close();
+            return 1;
+        }
+
+        OutputSink sink;
+        try {
+            sink = outputFile == null ? FileOutputSink.stdout() : FileOutputSink.open(Paths.get(outputFile));
+        } catch (IOException e) {
+            System.err.println("Error opening output file: " + e.getMessage());
+            trace.close();
+            return 1;
+        }
+        model.setOutputSink(sink);
+        try {
+            model.runProgram(new ExecutionLimits(maxSteps, timeLimit, maxOutput));
+            sink.close();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error writing output: " + e.getMessage());
+            return 1;
+        } finally {
+            trace.close();
+        }
+        return profile == null ? 0 : saveProfile(profile, Paths.get(profileFile));
+    }
+
+/**
+* Reports the opcode profile of a run on stderr and adds it to the counts kept
+* in a file, so that training runs over many programs add up.
+*
+* @param profile The profile of the run.
+* @param file The file with the counts of earlier runs, created if missing.
+* @return The exit code: 0 on success, 1 if the file cannot be read or written.
+*/
+
+    private static int saveProfile(OpcodeProfile profile, Path file) {
+        System.err.print(profile.report(10));
+        try {
+            OpcodeProfile total = Files.exists(file) ? OpcodeProfile.load(file) : new OpcodeProfile();
+            total.add(profile);
+            total.save(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error saving opcode profile: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+/**
+* Compiles a program into a runnable jar, by default named after the program
+* file: "java Main compile ProgramA.txt" writes ProgramA.jar.
+*
+* @param args The command-line arguments, starting with "compile".
+* @return The exit code: 0 on success, 1 if the program or jar has an error, 2 for bad arguments.
+*/
+
+    private static int compileToJar(String[] args) {
+        String file = null;
+        String jarFile = null;
+        boolean basicNumbers = false;
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o": jarFile = args[++i]; break;
+                    case "--basic-numbers": basicNumbers = true; break;
+                    default:
+                        if (args[i].startsWith("-") || file != null) {
+                            throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                        }
+                        file = args[i];
+                        break;
+                }
+            }
+            if (file == null) {
+                throw new IllegalArgumentException("No program file given");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (jarFile == null) {
+            String name = Paths.get(file).getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            jarFile = (dot > 0 ? name.substring(0, dot) : name) + ".jar";
+        }
+
+        String code;
+        try {
+            code = Files.readString(Paths.get(file));
+        } catch (IOException e) {
+            System.err.println("Error loading file: " + e.getMessage());
+            return 1;
+        }
+        try {
+            ProgramJar.write(Optimizer.optimize(Parser.parse(code, new SymbolTable())), basicNumbers, Paths.get(jarFile));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Error writing jar: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    private static int parseThreshold(String value) {
+        try {
+            int threshold = Integer.parseInt(value);
+            if (threshold >= 1) {
+                return threshold;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid tier threshold: " + value);
+    }
 
-        
+    private static long parseLimit(String value) {
+        if (value.equals("unlimited")) {
+            return ExecutionLimits.UNLIMITED;
+        }
+        try {
+            long limit = Long.parseLong(value);
+            if (limit >= 0) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid limit: " + value);
     }
 }
@@ -0,0 +1,56 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * MEMORYOUTPUTSINK.JAVA
+ *
+ * The MemoryOutputSink class keeps all program output in memory. The Model uses
+ * it when no other sink is set, so getOutput() can return the output of a run;
+ * it is also the sink to use when checking a program's output.
+ */
+
+public final class MemoryOutputSink implements OutputSink {
+    private byte[] bytes = new byte[1024];
+    private int size = 0;
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (size + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+        }
+        buffer.get(bytes, size, length);
+        size += length;
+    }
+
+/**
+ * Returns the number of bytes written to the sink.
+ *
+ * @return The output size in bytes.
+ */
+
+    public int size() {
+        return size;
+    }
+
+/**
+ * Discards all output written so far.
+ */
+
+    public void reset() {
+        size = 0;
+    }
+
+/**
+ * Returns the output written so far.
+ *
+ * @return The output as text.
+ */
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+}
@@ -1,5 +1,11 @@
-import java.util.Hashtable;
-import java.util.ArrayList;
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 
@@ -9,427 +15,1113 @@ import java.util.ArrayList;
  * It handles loading, executing, and managing state for BASIC-like programs.
  * 
  * The class includes a mechanism to prevent infinite loops by limiting the number 
- * of execution steps.
+ * of execution steps, the running time and the amount of output of each run
+ * (see ExecutionLimits).
  */
 
 public class Model {
-    private static final int MAX_STEPS = 100; // Limit to prevent infinite loops
+    private static final String PRINT_ERROR = "Error evaluating print expression: ";
+    private static final String IF_ERROR = "Error evaluating 'if' condition: ";
+    private static final int MAX_SUPERINSTRUCTIONS = 8; // Pairs taken from a training profile
 
-    private Hashtable<String, Double> variables = new Hashtable<>();
-    private StringBuilder outputBuilder = new StringBuilder();
-    private ArrayList<String> programLines = new ArrayList<>();
-    private int currentLine = 0;
-    private int stepCount = 0;
+    // Compiles hot programs for Tier.TIERED, so running programs never wait for the compiler
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "basic-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private SymbolTable symbols = new SymbolTable();
+    private double[] frame = new double[0];     // Variable values, indexed by slot
+    private boolean[] defined = new boolean[0]; // Whether a slot has been assigned yet
+    private double[] stack = new double[0];     // Operand stack for evaluating expressions
+    private final MemoryOutputSink memoryOutput = new MemoryOutputSink(); // Used when no other sink is set
+    private final OutputBuffer output = new OutputBuffer(memoryOutput);
+    private OutputSink sink = memoryOutput;
+    private Program program = Program.EMPTY;
+    private Program parsed = Program.EMPTY; // The program before the Optimizer simplified it
+    private String source = "";
+    int currentLine = 0; // Set directly by compiled programs when they return
+    private volatile long stepCount = 0; // Read by other threads to show progress
+    private volatile boolean cancelRequested = false;
+    private ExecutionLimits limits = ExecutionLimits.DEFAULT;
+    private long outputLimit = ExecutionLimits.DEFAULT.getMaxOutputBytes();
+    private long maxInstructions = ExecutionLimits.UNLIMITED; // Instruction budget of the current run
+    private long deadline = Long.MAX_VALUE;                     // System.nanoTime() deadline of the current run
+    private String stopMessage = null; // Why the current run was stopped early, if it was
+    private int tier = Tier.INTERPRETER;
+    private Program closuresFor = null;   // The program closures were built for
+    private double[] closureFrame = null; // The frame the closures are bound to
+    private ClosureCompiler.Statement[] closures = null;
+    private int tierThreshold = 10_000;    // Backward jumps to one loop before Tier.TIERED compiles
+    private String profiledSource = null;  // The source loopCounts and tieredCompile belong to
+    private int[] loopCounts = new int[0]; // Backward jumps to each instruction so far
+    private Future<CompiledProgram> tieredCompile = null; // Background compile, once the program is hot
+    private boolean[] notInteger = new boolean[0]; // Slots seen holding a non-integer, by slot
+    private boolean[] typeProfile = null;      // notInteger while Tier.TIERED runs, else null
+    private boolean speculationFailed = false; // Whether a speculative compile of profiledSource deoptimized
+    private String compiledSource = null;  // The source compiledCode was generated from
+    private CompiledProgram compiledCode = null;
+    private Trace trace = Trace.NONE;
+    private OpcodeProfile opcodeProfile = null; // Counts instruction pairs while set
+    private boolean[] superinstructions = null;  // The pairs loaded programs fuse, or null for none
 
 /**
  * Loads the provided BASIC code into the program, preparing it for execution.
- * Each line of code is trimmed and stored in a list, and any previous program state
- * (such as the current line, step count, and output) is reset.
+ * The code is compiled once by the Parser into a Program, and any previous program
+ * state (such as the current line, step count, and output) is reset. Variables keep
+ * the values they had before, moved to the slots the new program uses for them.
  *
  * @param code The BASIC code to be loaded, where each line represents a command.
+ * @throws IllegalArgumentException if a "goto" or "if" targets a missing line.
  */
 
     public void loadProgram(String code) {
-        System.out.println("Loading program...");
-        programLines.clear();
-        for (String line : code.split("\n")) {
-            programLines.add(line.trim());
-            System.out.println("Loaded line: " + line.trim());
+        if (trace.level >= Trace.STATEMENT) {
+            trace.message("Loading program...");
+        }
+        SymbolTable newSymbols = new SymbolTable();
+        parsed = Parser.parse(code, newSymbols);
+        program = Optimizer.optimize(parsed, superinstructions);
+        source = code;
+        if (trace.level >= Trace.VERBOSE) {
+            trace.message("Compiled instructions: ", program.size());
+        }
+
+        double[] newFrame = new double[newSymbols.size()];
+        boolean[] newDefined = new boolean[newSymbols.size()];
+        for (int slot = 0; slot < newFrame.length; slot++) {
+            int oldSlot = symbols.lookup(newSymbols.name(slot));
+            if (oldSlot != -1 && defined[oldSlot]) {
+                newFrame[slot] = frame[oldSlot];
+                newDefined[slot] = true;
+            }
         }
+        symbols = newSymbols;
+        frame = newFrame;
+        defined = newDefined;
+        ensureStack(parsed); // Deepest expressions; the optimized ones need no more
         currentLine = 0;
         stepCount = 0;
-        outputBuilder.setLength(0); // Clear previous output
+        cancelRequested = false;
+        output.reset(); // Clear previous output
+        memoryOutput.reset();
     }
 
 /**
- * Executes the loaded BASIC program line by line. Each line is processed until
- * the end of the program is reached or a step limit is hit to prevent infinite loops.
- * 
- * The method keeps track of the current line and steps executed. If the maximum
- * number of steps (`MAX_STEPS`) is reached, it stops execution and logs an error 
- * indicating a potential infinite loop.
+ * Executes the loaded BASIC program within the limits set with setLimits.
  */
 
     public void runProgram() {
-        System.out.println("Running program...");
-        while (currentLine < programLines.size()) {
-            if (stepCount >= MAX_STEPS) {
-                outputBuilder.append("Error: Program stopped due to potential infinite loop\n");
-                System.out.println("Error: Program stopped due to potential infinite loop");
-                break;
+        runProgram(limits);
+    }
+
+/**
+ * Executes the loaded BASIC program instruction by instruction. Each instruction
+ * is dispatched until the end of the program is reached or one of the given
+ * limits is hit, which also protects against infinite loops.
+ * 
+ * The instruction budget is handed out in slices of ExecutionLimits.CHECK_INTERVAL
+ * instructions. Within a slice the loop only counts down; the budget, the clock and
+ * cancel requests are checked when a slice runs out, which is also when buffered
+ * output is passed on to the sink. If a limit is reached or the run is cancelled, execution
+ * stops and an error explaining why is added to the output.
+ *
+ * @param runLimits The limits for this run.
+ */
+
+    public void runProgram(ExecutionLimits runLimits) {
+        boolean tracing = trace.level >= Trace.STATEMENT;
+        if (tracing) {
+            trace.message("Running program...");
+        }
+
+        deadline = runLimits.deadline(System.nanoTime());
+        maxInstructions = runLimits.getMaxInstructions();
+        outputLimit = runLimits.getMaxOutputBytes();
+        stopMessage = null;
+
+        int slice;
+        if (opcodeProfile != null) {
+            opcodeProfile.startRun();
+        }
+        if (tracing || opcodeProfile != null || tier == Tier.INTERPRETER) {
+            slice = interpret(tracing, false, 0);
+        } else if (tier == Tier.CLOSURES) {
+            slice = runClosures(closureProgram(), 0);
+        } else if (tier == Tier.TIERED) {
+            slice = runTiered();
+        } else {
+            CompiledProgram compiled = compiledProgram();
+            slice = compiled != null ? runCompiled(compiled, 0) : interpret(false, false, 0);
+        }
+        stepCount -= slice; // Give back the unused part of the last slice
+
+        if (stopMessage != null) {
+            output.append(stopMessage).append('\n');
+            if (tracing) {
+                trace.message(stopMessage);
+            }
+        }
+        flushOutput();
+        if (tracing) {
+            trace.message("Program finished running after steps: ", stepCount);
+        }
+    }
+
+/**
+ * Runs the loaded program in the interpreter loop, from the current line until
+ * it ends or is stopped. In Tier.TIERED the loop also counts the backward jumps
+ * of the program's loops, and once the program has been compiled in the
+ * background it moves the run into the compiled code at the next backward jump
+ * (on-stack replacement). The variables stay where they are, in the frame, and
+ * the compiled code carries on from the jump target with the rest of the slice.
+ *
+ * @param tracing Whether statements are traced.
+ * @param tiered Whether loops are counted and the run may move to compiled code.
+ * @param slice The instructions left of the current slice of the instruction budget.
+ * @return The unused part of the last slice of the instruction budget.
+ */
+
+    private int interpret(boolean tracing, boolean tiered, int slice) {
+        int size = program.size();
+        OpcodeProfile profile = opcodeProfile;
+        while (currentLine < size) {
+            if (slice == 0) {
+                slice = nextSlice();
+                if (slice == 0) {
+                    break;
+                }
             }
+            slice--;
 
-            System.out.println("Processing line " + (currentLine + 1) + ": " + programLines.get(currentLine));
-            processLine(programLines.get(currentLine));
+            if (tracing) {
+                trace.statement(program, currentLine);
+            }
+            int index = currentLine;
+            int last = execute(index, slice);
+            slice -= last - index; // A superinstruction ran the next instruction too
+            if (profile != null) {
+                profile.record(program.code, index, last - index + 1);
+            }
             currentLine++;
-            stepCount++;
+            if (tiered && currentLine <= last && hotProgramReady(currentLine)) {
+                return runHot(slice);
+            }
         }
-        System.out.println("Program finished running.");
+        return slice;
     }
 
 /**
- * Processes a single line of BASIC code, determining the type of command
- * (e.g., print, assignment, if, goto) and performing the appropriate action.
- * 
- * @param line The line of BASIC code to process.
+ * Runs the loaded program in Tier.TIERED. Programs start in the interpreter,
+ * which counts how often each loop jumps back. Once a loop reaches the tier
+ * threshold, the program is compiled to bytecode on a background thread while
+ * the interpreter carries on. The run moves to the compiled code at a backward
+ * jump once it is ready, and later runs of the same source start in it; programs
+ * too large to compile use closures instead. Programs without a hot loop are
+ * never compiled.
+ *
+ * The interpreter also records which variables are ever assigned a value that
+ * is not an integer. The compiled program speculates that the others only hold
+ * integers and keeps them as longs (see Speculation). When that turns out to be
+ * wrong, the compiled code stops before the instruction that found out, the run
+ * goes back to the interpreter there, and the program is compiled again with
+ * doubles only.
+ *
+ * @return The unused part of the last slice of the instruction budget.
  */
 
-    private void processLine(String line) {
-        int commentIndex = line.indexOf("//");
-        if (commentIndex != -1) {
-            line = line.substring(0, commentIndex).trim(); // Keep only the code part before //
+    private int runTiered() {
+        if (!source.equals(profiledSource)) {
+            profiledSource = source;
+            loopCounts = new int[program.size()];
+            notInteger = new boolean[program.symbols.size()];
+            tieredCompile = null;
+            speculationFailed = false;
         }
+        typeProfile = notInteger;
+        try {
+            if (tieredCompile != null && tieredCompile.isDone()) {
+                return runHot(0);
+            }
+            return interpret(false, true, 0);
+        } finally {
+            typeProfile = null;
+        }
+    }
 
-        line = line.replaceAll("^\\d+", "").trim(); // Remove line number if it exists
+/**
+ * Counts a backward jump of the interpreter in Tier.TIERED, starts compiling the
+ * program once the loop is hot, and tells whether the compiled code is ready.
+ *
+ * @param target The instruction jumped back to, the head of a loop.
+ * @return True if the run can move to the compiled program.
+ */
 
-        if (line.isEmpty()) {
-            System.out.println("Skipping empty line or comment-only line.");
-            return;
+    private boolean hotProgramReady(int target) {
+        if (tieredCompile == null) {
+            if (++loopCounts[target] >= tierThreshold) {
+                compileHotProgram(!speculationFailed);
+            }
+            return false;
         }
+        return tieredCompile.isDone();
+    }
 
-        System.out.println("Processing: " + line);
+/**
+ * Starts compiling the loaded program for Tier.TIERED in the background.
+ *
+ * @param speculate Whether variables only seen holding integers are held as longs.
+ */
 
-        if (line.startsWith("print")) {
-            handlePrint(line);
-        } else if (line.contains("=") && !line.contains("goto")) { // Detect assignment statements
-            evaluateExpression(line);
-        } else if (line.startsWith("if")) {
-            handleIf(line);
-        } else if (line.startsWith("goto")) {
-            handleGoto(line);
-        } else if (line.equals("end")) {
-            currentLine = programLines.size(); // End program
-            System.out.println("End of program encountered.");
-        } else {
-            outputBuilder.append("Error: Unsupported statement: ").append(line).append("\n");
-            System.out.println("Error: Unsupported statement: " + line);
+    private void compileHotProgram(boolean speculate) {
+        Program hot = program;
+        boolean[] slots = null;
+        if (speculate) {
+            for (int slot = 0; slot < notInteger.length; slot++) {
+                if (!notInteger[slot]) {
+                    if (slots == null) {
+                        slots = new boolean[notInteger.length];
+                    }
+                    slots[slot] = true;
+                }
+            }
         }
+        boolean[] speculatedSlots = slots;
+        tieredCompile = COMPILER.submit(() -> compile(hot, speculatedSlots));
     }
 
 /**
- * Handles the "print" command, evaluating the expression and appending
- * the result to the output.
+ * Runs the rest of the current run in the program compiled for Tier.TIERED,
+ * from the current line on.
  *
- * @param line The "print" command line to process.
+ * @param slice The instructions left of the current slice of the instruction budget.
+ * @return The unused part of the last slice of the instruction budget.
  */
 
-    private void handlePrint(String line) {
-        System.out.println("Handling print statement: " + line);
-        String expression = line.substring(5).trim();
+    private int runHot(int slice) {
+        CompiledProgram compiled;
         try {
-            double result = evaluate(expression);
-            outputBuilder.append(result).append("\n");
-            System.out.println("Print result: " + result);
-        } catch (IllegalArgumentException e) {
-            outputBuilder.append("Error evaluating print expression: ").append(e.getMessage()).append("\n");
-            System.out.println("Error evaluating print expression: " + e.getMessage());
+            compiled = tieredCompile.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Cannot compile program", e);
         }
+        if (compiled == null) {
+            return runClosures(closureProgram(), slice);
+        }
+        if (compiled.speculatedSlots == null) {
+            return runCompiled(compiled, slice);
+        }
+        if (!Speculation.fits(frame, compiled.speculatedSlots)) {
+            return deoptimize(slice);
+        }
+        slice = runCompiled(compiled, slice);
+        if (currentLine < program.size() && stopMessage == null) {
+            return deoptimize(slice); // A guard failed before instruction currentLine
+        }
+        return slice;
     }
 
 /**
- * Processes an "if" statement by evaluating the condition. If the condition
- * is true, jumps to the specified line number using a "goto" command.
+ * Gives up on a speculative compile of the loaded program: the run goes on in the
+ * interpreter from the current line while the program is compiled again with
+ * doubles only.
  *
- * @param line The "if" command line to process.
+ * @param slice The instructions left of the current slice of the instruction budget.
+ * @return The unused part of the last slice of the instruction budget.
  */
 
-    private void handleIf(String line) {
-        System.out.println("Handling if statement: " + line);
-        line = line.substring(2).trim();
+    private int deoptimize(int slice) {
+        speculationFailed = true;
+        compileHotProgram(false);
+        return interpret(false, true, slice);
+    }
 
-        if (line.startsWith("(") && line.contains(")")) {
-            int closingParenIndex = line.indexOf(")");
-            String conditionPart = line.substring(1, closingParenIndex).trim();
-            String remainingPart = line.substring(closingParenIndex + 1).trim();
+/**
+ * Runs the loaded program as statements built by the ClosureCompiler, from the
+ * current line until it ends or is stopped.
+ *
+ * @param statements The compiled statements of the program.
+ * @param slice The instructions left of the current slice of the instruction budget.
+ * @return The unused part of the last slice of the instruction budget.
+ */
 
-            if (remainingPart.startsWith("goto")) {
-                line = conditionPart + " " + remainingPart;
+    private int runClosures(ClosureCompiler.Statement[] statements, int slice) {
+        int size = statements.length;
+        int line = currentLine;
+        while (line < size) {
+            if (slice == 0) {
+                slice = nextSlice();
+                if (slice == 0) {
+                    break;
+                }
             }
+            slice--;
+            line = statements[line].execute();
+        }
+        currentLine = line;
+        return slice;
+    }
+
+/**
+ * Returns the statements of the loaded program built by the ClosureCompiler,
+ * building them on first use. They are bound to the variable arrays, so they are
+ * rebuilt when a statement run with evaluateExpression() replaces those.
+ *
+ * @return The compiled statements.
+ */
+
+    private ClosureCompiler.Statement[] closureProgram() {
+        if (closuresFor != program || closureFrame != frame) {
+            closuresFor = program;
+            closureFrame = frame;
+            closures = ClosureCompiler.compile(this, program, frame, defined);
         }
+        return closures;
+    }
 
-        int gotoIndex = line.indexOf("goto");
-        if (gotoIndex == -1) {
-            outputBuilder.append("Error: 'if' statement missing 'goto'\n");
-            System.out.println("Error: 'if' statement missing 'goto'");
-            return;
+/**
+ * A program compiled to bytecode, with what its code takes for granted.
+ */
+
+    private static final class CompiledProgram {
+        final MethodHandle run;
+        final TypeInference facts;      // Null if the program was too large to analyse
+        final boolean[] speculatedSlots; // Null if the code does not speculate
+
+        CompiledProgram(MethodHandle run, TypeInference facts, boolean[] speculatedSlots) {
+            this.run = run;
+            this.facts = facts;
+            this.speculatedSlots = speculatedSlots;
         }
+    }
+
+/**
+ * Analyses a program with TypeInference and compiles it with the BytecodeCompiler.
+ *
+ * @param program The program to compile.
+ * @param speculatedSlots The variables to speculate on, or null for none.
+ * @return The compiled program, or null if it is too large to compile.
+ */
 
-        String condition = line.substring(0, gotoIndex).trim();
-        String targetLine = line.substring(gotoIndex + 4).trim();
+    private static CompiledProgram compile(Program program, boolean[] speculatedSlots) {
+        TypeInference facts = TypeInference.analyze(program);
+        MethodHandle run = BytecodeCompiler.compile(program, facts, speculatedSlots);
+        return run != null ? new CompiledProgram(run, facts, speculatedSlots) : null;
+    }
 
+/**
+ * Runs the loaded program as bytecode generated by the BytecodeCompiler, from
+ * the current line until it ends or is stopped. If the variables are not in a
+ * state the compiled code allows for there, because they were changed outside
+ * the program, the run goes on in the interpreter instead.
+ *
+ * @param compiled The compiled program.
+ * @param slice The instructions left of the current slice of the instruction budget.
+ * @return The unused part of the last slice of the instruction budget.
+ */
+
+    private int runCompiled(CompiledProgram compiled, int slice) {
+        if (compiled.facts != null && !compiled.facts.holdsAt(currentLine, frame, defined)) {
+            return interpret(false, false, slice);
+        }
         try {
-            if (evaluateCondition(condition)) {
-                int targetIndex = findLineIndex(targetLine);
-                System.out.println("Condition met, jumping to line " + targetLine + " (index " + targetIndex + ")");
-                currentLine = targetIndex - 1;
-            } else {
-                System.out.println("Condition not met, continuing to next line.");
+            return (int) compiled.run.invokeExact(this, frame, defined, currentLine, slice);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+/**
+ * Returns the loaded program compiled to bytecode, compiling it on first use.
+ * Reloading the same source reuses the compiled class, since it parses to the
+ * same instructions and variable slots.
+ *
+ * @return The compiled program, or null if it cannot be compiled.
+ */
+
+    private CompiledProgram compiledProgram() {
+        if (!source.equals(compiledSource)) {
+            compiledSource = source;
+            compiledCode = compile(program, null);
+            if (compiledCode == null && trace.level >= Trace.STATEMENT) {
+                trace.message("Program too large to compile, interpreting it");
             }
-        } catch (IllegalArgumentException e) {
-            outputBuilder.append("Error evaluating 'if' condition: ").append(e.getMessage()).append("\n");
-            System.out.println("Error evaluating 'if' condition: " + e.getMessage());
         }
+        return compiledCode;
     }
 
 /**
- * Processes an "if" statement by evaluating the condition. If the condition
- * is true, jumps to the specified line number using a "goto" command.
+ * Hands out the next slice of the instruction budget of the current run. This is
+ * where streamed output is passed on and where the budget, the clock and cancel
+ * requests are checked; if one of them stops the run, the reason is recorded in
+ * stopMessage. Called by the interpreter loop and by compiled programs.
  *
- * @param line The "if" command line to process.
+ * @return The number of instructions that may run before the next call, or 0 to stop.
+ */
+
+    int nextSlice() {
+        flushOutput();
+        if (cancelRequested) {
+            stopMessage = "Error: Program stopped by the user";
+            return 0;
+        }
+        long left = maxInstructions - stepCount;
+        if (left <= 0) {
+            stopMessage = "Error: Program stopped due to potential infinite loop";
+            return 0;
+        }
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+            stopMessage = "Error: Program stopped after exceeding its time limit";
+            return 0;
+        }
+        int slice = (int) Math.min(ExecutionLimits.CHECK_INTERVAL, left);
+        stepCount += slice;
+        return slice;
+    }
+
+/**
+ * Executes a single compiled instruction, dispatching on its opcode and
+ * performing the appropriate action. A superinstruction goes on with the next
+ * instruction in the same dispatch, unless the first one jumped or stopped the
+ * run, no instruction is left of the slice, or statements are traced.
+ * 
+ * @param index The index of the instruction to execute.
+ * @param slice The instructions left of the current slice, after this one.
+ * @return The index of the last instruction executed.
  */
 
-    private boolean evaluateCondition(String condition) {
-        System.out.println("Evaluating condition: " + condition);
-        String[] operators = {"=", ">", "<", ">=", "<="};
-        String operator = null;
-        String leftPart = null;
-        String rightPart = null;
+    private int execute(int index, int slice) {
+        int opcode = program.code[index * Program.WIDTH];
+        if (opcode < Opcode.PAIRS) {
+            execute(program, opcode, index);
+            return index;
+        }
+        execute(program, Opcode.first(opcode), index);
+        if (currentLine != index || slice == 0 || trace.level >= Trace.STATEMENT) {
+            return index;
+        }
+        currentLine = index + 1;
+        execute(program, Opcode.second(opcode), index + 1);
+        return index + 1;
+    }
+
+    private void execute(Program program, int index) {
+        execute(program, program.code[index * Program.WIDTH], index);
+    }
 
-        for (String op : operators) {
-            int opIndex = condition.indexOf(op);
-            if (opIndex != -1) {
-                operator = op;
-                leftPart = condition.substring(0, opIndex).trim();
-                rightPart = condition.substring(opIndex + op.length()).trim();
+    private void execute(Program program, int opcode, int index) {
+        int[] code = program.code;
+        int pc = index * Program.WIDTH;
+
+        switch (opcode) {
+            case Opcode.NOP:
+                break;
+            case Opcode.PRINT:
+                handlePrint(program.expressions[code[pc + 1]]);
+                break;
+            case Opcode.ASSIGN:
+                handleAssign(code[pc + 1], program.expressions[code[pc + 2]]);
+                break;
+            case Opcode.IF_EQ:
+            case Opcode.IF_GT:
+            case Opcode.IF_LT:
+            case Opcode.IF_GE:
+            case Opcode.IF_LE:
+                handleIf(opcode, program.expressions[code[pc + 1]], program.expressions[code[pc + 2]], code[pc + 3]);
+                break;
+            case Opcode.GOTO:
+                handleGoto(code[pc + 1]);
+                break;
+            case Opcode.END:
+                currentLine = program.size(); // End program
+                break;
+            case Opcode.ERROR:
+                output.append(program.strings[code[pc + 1]]);
+                endLine();
+                if (trace.level >= Trace.STATEMENT) {
+                    trace.message(program.strings[code[pc + 1]]);
+                }
+                break;
+            case Opcode.ADD_CONST: {
+                int slot = code[pc + 1];
+                if (defined[slot]) {
+                    assign(slot, frame[slot] + program.constants[code[pc + 2]]);
+                } else {
+                    execute(program.plain(), index); // Reports the unassigned variable
+                }
+                break;
+            }
+            case Opcode.IF_EQ_CONST:
+            case Opcode.IF_GT_CONST:
+            case Opcode.IF_LT_CONST:
+            case Opcode.IF_GE_CONST:
+            case Opcode.IF_LE_CONST: {
+                int slot = code[pc + 1];
+                if (defined[slot] && trace.level < Trace.EXPRESSION) {
+                    if (compare(opcode - Opcode.CONST_FORM, frame[slot], program.constants[code[pc + 2]])) {
+                        handleGoto(code[pc + 3]);
+                    }
+                } else {
+                    execute(program.plain(), index); // Reports the unassigned variable, or traces the operands
+                }
                 break;
             }
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
         }
+    }
 
-        if (operator == null || leftPart == null || rightPart == null) {
-            throw new IllegalArgumentException("Invalid condition: " + condition);
+/**
+ * Handles the "print" command, evaluating the expression and appending
+ * the result to the output.
+ *
+ * @param expression The compiled expression to print.
+ */
+
+    private void handlePrint(Expression expression) {
+        try {
+            double result = evaluate(expression);
+            output.append(result);
+            endLine();
+            if (trace.level >= Trace.EXPRESSION) {
+                trace.value(expression, result);
+            }
+        } catch (IllegalArgumentException e) {
+            reportError(PRINT_ERROR, e);
         }
+    }
 
-        double leftValue = variables.containsKey(leftPart) ? variables.get(leftPart) : evaluate(leftPart);
-        double rightValue = variables.containsKey(rightPart) ? variables.get(rightPart) : evaluate(rightPart);
+/**
+ * Processes a compiled "if" statement by evaluating the condition. If the
+ * condition is true, jumps to the target instruction.
+ *
+ * @param opcode The comparison opcode of the "if" statement.
+ * @param left The left-hand side of the comparison.
+ * @param right The right-hand side of the comparison.
+ * @param targetIndex The instruction to jump to when the condition holds.
+ */
 
-        switch (operator) {
-            case "=": return leftValue == rightValue;
-            case ">": return leftValue > rightValue;
-            case "<": return leftValue < rightValue;
-            case ">=": return leftValue >= rightValue;
-            case "<=": return leftValue <= rightValue;
-            default: throw new IllegalArgumentException("Unsupported operator in condition: " + operator);
+    private void handleIf(int opcode, Expression left, Expression right, int targetIndex) {
+        try {
+            if (evaluateCondition(opcode, left, right)) {
+                if (trace.level >= Trace.VERBOSE) {
+                    trace.jump(program, targetIndex);
+                }
+                currentLine = targetIndex - 1;
+            }
+        } catch (IllegalArgumentException e) {
+            reportError(IF_ERROR, e);
         }
     }
 
 /**
- * Handles a "goto" statement, changing the current line to the target line
- * if it exists in the program.
+ * Evaluates the condition of an "if" statement by comparing the values of
+ * its two sides.
  *
- * @param line The "goto" command line to process.
+ * @param opcode The comparison opcode of the "if" statement.
+ * @param left The left-hand side of the comparison.
+ * @param right The right-hand side of the comparison.
+ * @return True if the condition holds.
  */
 
-    private void handleGoto(String line) {
-        System.out.println("Handling goto statement: " + line);
-        String targetLine = line.substring(4).trim();
-        int lineIndex = findLineIndex(targetLine);
-        if (lineIndex != -1) {
-            System.out.println("Jumping to line " + targetLine + " (index " + lineIndex + ")");
-            currentLine = lineIndex - 1;
-        } else {
-            outputBuilder.append("Error: 'goto' target line not found: ").append(targetLine).append("\n");
-            System.out.println("Error: 'goto' target line not found: " + targetLine);
+    boolean evaluateCondition(int opcode, Expression left, Expression right) {
+        double leftValue = evaluate(left);
+        double rightValue = evaluate(right);
+
+        boolean result = compare(opcode, leftValue, rightValue);
+        if (trace.level >= Trace.EXPRESSION) {
+            trace.condition(leftValue, opcode, rightValue, result);
+        }
+        return result;
+    }
+
+    private static boolean compare(int opcode, double leftValue, double rightValue) {
+        switch (opcode) {
+            case Opcode.IF_EQ: return leftValue == rightValue;
+            case Opcode.IF_GT: return leftValue > rightValue;
+            case Opcode.IF_LT: return leftValue < rightValue;
+            case Opcode.IF_GE: return leftValue >= rightValue;
+            case Opcode.IF_LE: return leftValue <= rightValue;
+            default: throw new IllegalArgumentException("Unsupported operator in condition: " + Opcode.name(opcode));
         }
     }
 
 /**
- * Finds the index of a target line in the program based on its line number.
+ * Handles a "goto" statement, changing the current line to the target
+ * instruction, which was resolved when the program was loaded.
  *
- * @param targetLine The line number to search for.
- * @return The index of the target line, or -1 if not found.
+ * @param targetIndex The instruction to jump to.
  */
 
-    private int findLineIndex(String targetLine) {
-        System.out.println("Finding line index for target line: " + targetLine);
-        for (int i = 0; i < programLines.size(); i++) {
-            if (programLines.get(i).startsWith(targetLine)) {
-                System.out.println("Found target line at index " + i);
-                return i;
-            }
+    private void handleGoto(int targetIndex) {
+        if (trace.level >= Trace.VERBOSE) {
+            trace.jump(program, targetIndex);
         }
-        System.out.println("Target line not found.");
-        return -1;
+        currentLine = targetIndex - 1;
     }
 
 /**
- * Finds the index of a target line in the program based on its line number.
+ * Compiles and executes a single assignment statement of the form
+ * "variable = expression".
  *
- * @param targetLine The line number to search for.
- * @return The index of the target line, or -1 if not found.
+ * @param line The assignment statement to execute.
  */
 
     public void evaluateExpression(String line) {
-        System.out.println("Evaluating expression: " + line);
-        line = line.replaceAll(" ", "");
-        int equalIndex = line.indexOf("=");
-        if (equalIndex == -1) {
-            outputBuilder.append("Error: No '=' found in expression.\n");
-            System.out.println("Error: No '=' found in expression.");
+        Program statement = Parser.parse(line, symbols);
+        if (statement.size() != 1 || statement.opcode(0) != Opcode.ASSIGN) {
+            output.append("Error: No '=' found in expression.");
+            endLine();
+            if (trace.level >= Trace.STATEMENT) {
+                trace.message("Error: No '=' found in expression.");
+            }
             return;
         }
-        String var = line.substring(0, equalIndex);
-        String expression = line.substring(equalIndex + 1);
+        if (frame.length < symbols.size()) { // The statement may have introduced new variables
+            frame = Arrays.copyOf(frame, symbols.size());
+            defined = Arrays.copyOf(defined, symbols.size());
+        }
+        ensureStack(statement);
+        handleAssign(statement.code[1], statement.expressions[statement.code[2]]);
+        flushOutput();
+        variablesChanged();
+    }
+
+/**
+ * Called when variables are changed from outside the program. A run resumed in
+ * the middle of the program would then break what the Optimizer assumed about
+ * them, so the rest of it runs the program as parsed, and code compiled from the
+ * optimized program is dropped. The next load optimizes again.
+ */
+
+    private void variablesChanged() {
+        if (program != parsed && currentLine > 0 && currentLine < program.size()) {
+            program = parsed;
+            compiledSource = null;
+            profiledSource = null;
+        }
+    }
 
+/**
+ * Handles an assignment, evaluating the expression and storing the result
+ * in the variable's slot.
+ *
+ * @param slot The slot of the variable to assign.
+ * @param expression The compiled expression to evaluate.
+ */
+
+    private void handleAssign(int slot, Expression expression) {
+        double result;
         try {
-            double result = evaluate(expression);
-            variables.put(var, result);
-            outputBuilder.append(var).append(" = ").append(result).append("\n");
-            System.out.println("Assigned " + var + " = " + result);
+            result = evaluate(expression);
         } catch (IllegalArgumentException e) {
-            outputBuilder.append("Error evaluating expression for ").append(var).append(": ").append(e.getMessage()).append("\n");
-            System.out.println("Error evaluating expression for " + var + ": " + e.getMessage());
+            reportError("Error evaluating expression for " + symbols.name(slot) + ": ", e);
+            return;
         }
+        assign(slot, result);
     }
 
 /**
- * Evaluates a mathematical expression, returning the result as a double.
+ * Stores the value of an assignment and prints it.
  *
- * @param expr The expression to evaluate.
- * @return The evaluated result of the expression.
- * @throws IllegalArgumentException if the expression format is invalid.
+ * @param slot The slot of the variable assigned.
+ * @param result The value assigned.
  */
 
-    private double evaluate(String expr) {
-        return parseExpression(expr, new Index(0));
+    private void assign(int slot, double result) {
+        String var = symbols.name(slot);
+        frame[slot] = result;
+        defined[slot] = true;
+        if (typeProfile != null && !Speculation.isExactInteger(result)) {
+            typeProfile[slot] = true;
+        }
+        output.append(var).append(" = ").append(result);
+        endLine();
+        if (trace.level >= Trace.EXPRESSION) {
+            trace.value(var, result);
+        }
     }
 
 /**
- * Parses and evaluates an expression with addition and subtraction operators.
+ * Reports a statement that failed to evaluate; the program goes on with the next one.
  *
- * @param expr The expression to parse.
- * @param index The current index position in the expression.
+ * @param prefix What failed, such as "Error evaluating print expression: ".
+ * @param e The error, such as an undefined variable.
+ */
+
+    private void reportError(String prefix, IllegalArgumentException e) {
+        output.append(prefix).append(e.getMessage());
+        endLine();
+        if (trace.level >= Trace.STATEMENT) {
+            trace.message(prefix + e.getMessage());
+        }
+    }
+
+/**
+ * Returns how a compiled program reports an instruction that fails to evaluate,
+ * for example "Error evaluating expression for x: " followed by the error itself.
+ *
+ * @param program The program.
+ * @param index The index of the instruction.
+ * @return The start of the error message, or null for instructions that cannot fail.
+ */
+
+    static String errorPrefix(Program program, int index) {
+        int pc = index * Program.WIDTH;
+        switch (program.code[pc]) {
+            case Opcode.PRINT:
+                return PRINT_ERROR;
+            case Opcode.ASSIGN:
+                return "Error evaluating expression for " + program.symbols.name(program.code[pc + 1]) + ": ";
+            case Opcode.IF_EQ:
+            case Opcode.IF_GT:
+            case Opcode.IF_LT:
+            case Opcode.IF_GE:
+            case Opcode.IF_LE:
+                return IF_ERROR;
+            default:
+                return null;
+        }
+    }
+
+/**
+ * Ends the current output line. Once the output grows past the limit of the
+ * current run, the program is stopped after the instruction being executed.
+ */
+
+    private void endLine() {
+        output.append('\n');
+        if (output.written() > outputLimit && stopMessage == null) {
+            stopMessage = "Error: Program stopped after exceeding its output limit";
+            currentLine = program.size(); // End program
+        }
+    }
+
+/**
+ * Prints the value of a "print" statement for a compiled program.
+ *
+ * @param value The value to print.
+ * @return False if the output limit stops the program.
+ */
+
+    boolean printValue(double value) {
+        output.append(value);
+        endLine();
+        return stopMessage == null;
+    }
+
+/**
+ * Prints the line of an assignment, such as "c = 5.0", for a compiled program.
+ *
+ * @param name The name of the assigned variable.
+ * @param value The assigned value.
+ * @return False if the output limit stops the program.
+ */
+
+    boolean printAssignment(String name, double value) {
+        output.append(name).append(" = ").append(value);
+        endLine();
+        return stopMessage == null;
+    }
+
+/**
+ * Prints the message of an ERROR instruction for a compiled program.
+ *
+ * @param message The message.
+ * @return False if the output limit stops the program.
+ */
+
+    boolean printMessage(String message) {
+        output.append(message);
+        endLine();
+        return stopMessage == null;
+    }
+
+/**
+ * Reports an instruction of a compiled program that failed to evaluate, with the
+ * same message the interpreter prints for it.
+ *
+ * @param prefix The errorPrefix() of the failed instruction.
+ * @param e The error, such as an undefined variable.
+ * @return False if the output limit stops the program.
+ */
+
+    boolean statementFailed(String prefix, IllegalArgumentException e) {
+        output.append(prefix).append(e.getMessage());
+        endLine();
+        return stopMessage == null;
+    }
+
+/**
+ * Passes the buffered output on to the current sink.
+ */
+
+    private void flushOutput() {
+        output.flush();
+    }
+
+/**
+ * Evaluates a compiled mathematical expression, returning the result as a double.
+ * The postfix code is run on the Model's preallocated stack, so evaluation does
+ * not allocate unless it fails.
+ *
+ * @param expr The expression to evaluate.
  * @return The evaluated result of the expression.
+ * @throws IllegalArgumentException if the expression is invalid or uses an undefined variable.
  */
 
-    private double parseExpression(String expr, Index index) {
-        double result = parseTerm(expr, index); // Start with a term to handle higher precedence operations first
-        while (index.pos < expr.length()) {
-            char ch = expr.charAt(index.pos);
-            if (ch == '+') {
-                index.pos++;
-                result += parseTerm(expr, index); // Addition
-            } else if (ch == '-') {
-                index.pos++;
-                result -= parseTerm(expr, index); // Subtraction
-            } else {
-                break;
+    double evaluate(Expression expr) {
+        if (expr.error != null) {
+            throw new IllegalArgumentException(expr.error);
+        }
+
+        int[] code = expr.code;
+        double[] constants = expr.constants;
+        double[] stack = this.stack;
+        int sp = 0;
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc++]) {
+                case Expression.CONST:
+                    stack[sp++] = constants[code[pc++]];
+                    break;
+                case Expression.LOAD: {
+                    int slot = code[pc++];
+                    if (!defined[slot]) {
+                        throw new IllegalArgumentException("Undefined variable: " + symbols.name(slot));
+                    }
+                    stack[sp++] = frame[slot]; // Retrieve variable value
+                    break;
+                }
+                case Expression.ADD:
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    break;
+                case Expression.SUB:
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    break;
+                case Expression.MUL:
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    break;
+                case Expression.DIV:
+                    sp--;
+                    stack[sp - 1] /= stack[sp];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown expression opcode: " + code[pc - 1]);
             }
         }
-        return result;
+        return stack[0];
     }
 
 /**
- * Parses and evaluates a term with multiplication and division operators.
+ * Returns the output produced by the program since it was loaded. Output written
+ * to a sink set with setOutputSink is not kept, and is not part of the result.
  *
- * @param expr The expression to parse.
- * @param index The current index position in the expression.
- * @return The evaluated result of the term.
+ * @return The program output.
  */
 
-    private double parseTerm(String expr, Index index) {
-        double result = parseFactor(expr, index); // Start with a factor to handle parentheses
-        while (index.pos < expr.length()) {
-            char ch = expr.charAt(index.pos);
-            if (ch == '*') {
-                index.pos++;
-                result *= parseFactor(expr, index); // Multiplication
-            } else if (ch == '/') {
-                index.pos++;
-                result /= parseFactor(expr, index); // Division
-            } else {
-                break;
-            }
+    public String getOutput() {
+        if (sink == memoryOutput) {
+            flushOutput();
         }
-        return result;
+        return memoryOutput.toString();
     }
 
 /**
- * Parses and evaluates a factor, handling numbers, variables, and expressions
- * in parentheses.
+ * Compiles an expression against the variables of the loaded program, so it can
+ * be passed to evaluate() or evaluateCondition(). Used by the benchmarks, which
+ * measure those two methods on their own.
  *
- * @param expr The expression to parse.
- * @param index The current index position in the expression.
- * @return The evaluated result of the factor.
- * @throws IllegalArgumentException if the factor is invalid.
+ * @param source The expression to compile, such as "56 * (76 / c) / (56 + 6)".
+ * @return The compiled expression.
  */
 
-    private double parseFactor(String expr, Index index) {
-        skipWhitespace(expr, index); // Skip any whitespace
+    Expression compileExpression(String source) {
+        Expression expression = Expression.compile(source, symbols);
+        if (frame.length < symbols.size()) { // The expression may have introduced new variables
+            frame = Arrays.copyOf(frame, symbols.size());
+            defined = Arrays.copyOf(defined, symbols.size());
+        }
+        if (stack.length < expression.maxStack()) {
+            stack = new double[expression.maxStack()];
+        }
+        return expression;
+    }
 
-        char ch = expr.charAt(index.pos);
-        if (ch == '(') {
-            index.pos++;
-            double result = parseExpression(expr, index); // Recursively evaluate the expression inside parentheses
-            if (index.pos < expr.length() && expr.charAt(index.pos) == ')') {
-                index.pos++; // Move past the closing ')'
-            }
-            return result;
-        } else if (Character.isDigit(ch) || ch == '.') {
-            int start = index.pos;
-            while (index.pos < expr.length() && (Character.isDigit(expr.charAt(index.pos)) || expr.charAt(index.pos) == '.')) {
-                index.pos++;
-            }
-            return Double.parseDouble(expr.substring(start, index.pos)); // Parse the number as double
-        } else if (Character.isLetter(ch)) {
-            int start = index.pos;
-            while (index.pos < expr.length() && Character.isLetter(expr.charAt(index.pos))) {
-                index.pos++;
-            }
-            String varName = expr.substring(start, index.pos);
-            if (variables.containsKey(varName)) {
-                return variables.get(varName); // Retrieve variable value
-            } else {
-                throw new IllegalArgumentException("Undefined variable: " + varName);
-            }
+/**
+ * Grows the expression stack so it can hold the deepest expression of a program.
+ *
+ * @param compiled The program whose expressions will be evaluated.
+ */
+
+    private void ensureStack(Program compiled) {
+        int depth = 1;
+        for (Expression expression : compiled.expressions) {
+            depth = Math.max(depth, expression.maxStack());
+        }
+        if (stack.length < depth) {
+            stack = new double[depth];
+        }
+    }
+
+/**
+ * Streams program output to the given sink while the program runs, instead of
+ * keeping all of it for getOutput(). Output is handed to the sink whenever the
+ * output buffer fills up, once per ExecutionLimits.CHECK_INTERVAL instructions,
+ * and when a run ends. Pending output is flushed to the previous sink first.
+ *
+ * @param sink The sink for program output, or null to keep output in memory.
+ */
+
+    public void setOutputSink(OutputSink sink) {
+        this.sink = sink == null ? memoryOutput : sink;
+        output.setSink(this.sink);
+    }
+
+/**
+ * Chooses how runProgram() executes programs (see Tier). The closure and
+ * bytecode tiers compile the loaded program on its first run, the tiered mode
+ * once it has a hot loop; all of them give the same
+ * output, limits and step counts as the interpreter loop. Programs are still
+ * interpreted while tracing, and in the bytecode tier when they are too large
+ * to compile.
+ *
+ * @param tier One of Tier.INTERPRETER, Tier.CLOSURES, Tier.BYTECODE or Tier.TIERED.
+ */
+
+    public void setTier(int tier) {
+        if (tier < Tier.INTERPRETER || tier > Tier.TIERED) {
+            throw new IllegalArgumentException("Invalid tier: " + tier);
         }
-        throw new IllegalArgumentException("Invalid factor at position: " + index.pos);
+        this.tier = tier;
     }
 
 /**
- * Skips whitespace characters in an expression, moving the index to the next
- * non-whitespace character.
+ * Sets how many times a loop must jump back before Tier.TIERED compiles the
+ * program.
  *
- * @param expr The expression to parse.
- * @param index The current index position in the expression.
+ * @param threshold The number of backward jumps to one loop head, at least 1.
  */
 
-    private void skipWhitespace(String expr, Index index) {
-        while (index.pos < expr.length() && Character.isWhitespace(expr.charAt(index.pos))) {
-            index.pos++;
+    public void setTierThreshold(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Invalid tier threshold: " + threshold);
         }
+        this.tierThreshold = threshold;
     }
 
 /**
- * Skips whitespace characters in an expression, moving the index to the next
- * non-whitespace character.
+ * Chooses how printed numbers are written. By default they look like Java
+ * doubles ("5.0"); in BASIC style integer values are written without a fraction,
+ * the way classic BASIC prints them ("5").
  *
- * @param expr The expression to parse.
- * @param index The current index position in the expression.
+ * @param basicNumbers True to print integer values without ".0".
  */
 
-    public String getOutput() {
-        return outputBuilder.toString();
+    public void setBasicNumbers(boolean basicNumbers) {
+        output.setBasicNumbers(basicNumbers);
     }
 
 /**
- * Clears all stored variables and resets the output, preparing for a new
- * program run.
+ * Asks a running program to stop. This may be called from any thread; the run
+ * loop notices within ExecutionLimits.CHECK_INTERVAL instructions and ends the
+ * run with an error line in the output.
  */
 
-    public void clearVariables() {
-        variables.clear();
-        outputBuilder.setLength(0); // Clear output builder
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+/**
+ * Sets the limits used by runProgram() when no limits are given.
+ *
+ * @param limits The default execution limits.
+ */
+
+    public void setLimits(ExecutionLimits limits) {
+        this.limits = limits;
+        this.outputLimit = limits.getMaxOutputBytes();
+    }
+
+/**
+ * Returns the number of instructions executed since the program was loaded.
+ * While a program is running this may be read from any thread; it is then updated
+ * once per ExecutionLimits.CHECK_INTERVAL instructions.
+ *
+ * @return The step count.
+ */
+
+    public long getStepCount() {
+        return stepCount;
+    }
+
+/**
+ * Sets the trace that receives debugging events while programs are loaded and
+ * run. Tracing is off by default.
+ *
+ * @param trace The trace to use, or Trace.NONE to turn tracing off.
+ */
+
+    public void setTrace(Trace trace) {
+        this.trace = trace;
+    }
+
+/**
+ * Sets a profile that counts the instruction pairs the interpreter runs, to learn
+ * which superinstructions pay off. Programs are always interpreted while profiled.
+ *
+ * @param profile The profile to add the counts of later runs to, or null to stop
+ *                profiling.
+ */
+
+    public void setOpcodeProfile(OpcodeProfile profile) {
+        this.opcodeProfile = profile;
     }
 
 /**
- * Helper class representing an index in an expression, used for parsing.
+ * Chooses the superinstructions of the programs loaded from now on: the pairs
+ * run most often in a profile of training runs (see OpcodeProfile).
+ *
+ * @param training The profile of the training runs, or null for no superinstructions.
  */
 
-    private static class Index {
-        int pos;
+    public void setSuperinstructions(OpcodeProfile training) {
+        superinstructions = training == null ? null : training.selectPairs(MAX_SUPERINSTRUCTIONS);
+    }
+
+/**
+ * Returns the current value of every assigned variable by name, in slot order.
+ * The map is a snapshot meant for debugging and is not updated as the program runs.
+ *
+ * @return The assigned variables and their values.
+ */
 
-        Index(int pos) {
-            this.pos = pos;
+    public Map<String, Double> getVariables() {
+        Map<String, Double> view = new LinkedHashMap<>();
+        for (int slot = 0; slot < frame.length; slot++) {
+            if (defined[slot]) {
+                view.put(symbols.name(slot), frame[slot]);
+            }
         }
+        return view;
+    }
+
+/**
+ * Clears all stored variables and resets the output, preparing for a new
+ * program run.
+ */
+
+    public void clearVariables() {
+        Arrays.fill(frame, 0.0);
+        Arrays.fill(defined, false);
+        variablesChanged();
+        output.reset(); // Clear output
+        memoryOutput.reset();
     }
 }
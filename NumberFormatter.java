@@ -0,0 +1,227 @@
+/**
+ *
+ * NUMBERFORMATTER.JAVA
+ *
+ * The NumberFormatter class writes numbers as text without allocating. By default
+ * it gives the same text as Double.toString: the shortest decimal that reads back
+ * as the same double, with at least one digit after the point ("5.0", "0.1").
+ *
+ * Integer values are written with a plain digit loop. Other values between 1e-3
+ * and 1e7, the range Double.toString writes without an exponent, are written
+ * with the fewest decimals d that read back. A double is mantissa / 2^shift, so
+ * scaling it by 10^d = 5^d * 2^d is an exact 128-bit product; the scaled value is
+ * rounded to the nearest integer, and those digits read back if they lie within
+ * the rounding interval of the double. If d decimals read back, so do d + 1, and
+ * 17 significant digits always do, so after trying the first few decimals one
+ * by one, the fewest decimals are found by a binary search. Anything else, such as 1.0E-5 or NaN,
+ * falls back to Double.toString.
+ *
+ * In BASIC style, integer values are written without ".0", the way classic BASIC
+ * prints them ("5" instead of "5.0"), up to 2^53 where doubles stop being exact
+ * integers.
+ */
+
+public final class NumberFormatter {
+    /** Room needed in the target array for any formatted number. */
+    public static final int MAX_LENGTH = 32;
+
+    private static final long MAX_EXACT = 1L << 53; // Doubles are exact integers below this
+    private static final double MAX_FIXED = 1e7;    // Double.toString uses an exponent from here
+    private static final double MIN_FIXED = 1e-3;   // and below here
+    private static final int MAX_DECIMALS = 20;     // Enough for 17 significant digits from 1e-3
+    private static final int SHORT_DECIMALS = 3;    // Tried one by one before the binary search
+    private static final long FRACTION_MASK = (1L << 52) - 1;
+
+    private static final double[] DECADES = {1e-2, 1e-1, 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6};
+    private static final long[] POWERS_OF_FIVE = new long[MAX_DECIMALS + 1];
+    private static final long[] POWERS_OF_TEN = new long[MAX_DECIMALS + 1];
+
+    static {
+        POWERS_OF_FIVE[0] = 1;
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_DECIMALS; i++) {
+            POWERS_OF_FIVE[i] = POWERS_OF_FIVE[i - 1] * 5;
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10; // Overflows past 10^18, but is only used for fractions
+        }
+    }
+
+    private NumberFormatter() {
+    }
+
+/**
+ * Writes a number as ASCII text.
+ *
+ * @param value The number to write.
+ * @param basicStyle True to write integer values without a fraction, as in "5".
+ * @param target The array to write to, with room for at least MAX_LENGTH bytes.
+ * @return The number of bytes written.
+ */
+
+    public static int format(double value, boolean basicStyle, byte[] target) {
+        int length = 0;
+        double magnitude = Math.abs(value);
+        boolean negative = (Double.doubleToRawLongBits(value) < 0) && !(basicStyle && value == 0);
+
+        if (magnitude < (basicStyle ? MAX_EXACT : MAX_FIXED) && magnitude == (long) magnitude) {
+            if (negative) {
+                target[length++] = '-';
+            }
+            length = writeDigits((long) magnitude, target, length, 1);
+            if (!basicStyle) {
+                target[length++] = '.';
+                target[length++] = '0';
+            }
+            return length;
+        }
+
+        if (magnitude >= MIN_FIXED && magnitude < MAX_FIXED) {
+            long bits = Double.doubleToRawLongBits(magnitude);
+            long mantissa = (bits & FRACTION_MASK) | (1L << 52);
+            int shift = 1075 - (int) (bits >>> 52); // magnitude == mantissa / 2^shift, 29 <= shift <= 62
+
+            // Numbers strictly between lower / 2^(shift + 2) and upper / 2^(shift + 2) read back as
+            // magnitude; the bounds themselves do too when the mantissa is even (round half to even).
+            long lower = 4 * mantissa - ((bits & FRACTION_MASK) == 0 ? 1 : 2);
+            long upper = 4 * mantissa + 2;
+            boolean inclusive = (mantissa & 1) == 0;
+
+            int exponent = -3; // Decimal exponent of the leading digit
+            while (exponent < 6 && magnitude >= DECADES[exponent + 3]) {
+                exponent++;
+            }
+            int decimals = 0;
+            long digits = -1;
+            while (digits < 0 && decimals < SHORT_DECIMALS) { // Most printed numbers are short
+                digits = digitsAt(++decimals, mantissa, shift, lower, upper, inclusive);
+            }
+            if (digits < 0) {
+                int low = decimals + 1;
+                int high = 16 - exponent; // 17 significant digits
+                digits = digitsAt(high, mantissa, shift, lower, upper, inclusive);
+                while (low < high && digits >= 0) {
+                    int middle = (low + high) >>> 1;
+                    long candidate = digitsAt(middle, mantissa, shift, lower, upper, inclusive);
+                    if (candidate >= 0) {
+                        high = middle;
+                        digits = candidate;
+                    } else {
+                        low = middle + 1;
+                    }
+                }
+                decimals = high;
+            }
+            if (digits >= 0) {
+                if (negative) {
+                    target[length++] = '-';
+                }
+                return writeFixed(digits, decimals, target, length);
+            }
+        }
+
+        String text = Double.toString(value);
+        for (int i = 0; i < text.length(); i++) {
+            target[length++] = (byte) text.charAt(i);
+        }
+        return length;
+    }
+
+/**
+ * Returns the digits of a double with a given number of decimals, if they read
+ * back as the double: the nearest integer to magnitude * 10^decimals (the even
+ * one on a tie), or the integer on the other side when only that one lies in
+ * the rounding interval.
+ *
+ * @param decimals The number of digits after the decimal point.
+ * @param mantissa The mantissa of the double, with its implicit leading bit.
+ * @param shift The binary exponent of the double, negated.
+ * @param lower The lower bound of the rounding interval, in units of 2^-(shift + 2).
+ * @param upper The upper bound of the rounding interval, in units of 2^-(shift + 2).
+ * @param inclusive Whether the bounds themselves read back as the double.
+ * @return The digits, or -1 if no integer with this many decimals reads back.
+ */
+
+    private static long digitsAt(int decimals, long mantissa, int shift, long lower, long upper, boolean inclusive) {
+        // magnitude * 10^decimals == mantissa * 5^decimals / 2^(shift - decimals)
+        long high = Math.multiplyHigh(mantissa, POWERS_OF_FIVE[decimals]);
+        long low = mantissa * POWERS_OF_FIVE[decimals];
+        int scale = shift - decimals;
+        if (scale <= 0 || (high >>> scale) != 0) {
+            return -1; // More digits than a long holds
+        }
+        long floor = (high << (64 - scale)) | (low >>> scale);
+        long remainder = low & ((1L << scale) - 1);
+        long half = 1L << (scale - 1);
+        // On an exact tie Double.toString takes the even digits
+        long nearest = remainder > half || remainder == half && (floor & 1) != 0 ? floor + 1 : floor;
+        long other = nearest == floor ? floor + 1 : floor;
+
+        if (readsBack(nearest, decimals, shift, lower, upper, inclusive)) {
+            return nearest;
+        }
+        return readsBack(other, decimals, shift, lower, upper, inclusive) ? other : -1;
+    }
+
+/**
+ * Checks whether digits / 10^decimals lies in the rounding interval of a double,
+ * comparing lower * 5^decimals, digits * 2^(shift + 2 - decimals) and
+ * upper * 5^decimals as exact 128-bit numbers.
+ *
+ * @param digits The candidate digits.
+ * @param decimals The number of digits after the decimal point.
+ * @param shift The binary exponent of the double, negated.
+ * @param lower The lower bound of the interval, in units of 2^-(shift + 2).
+ * @param upper The upper bound of the interval, in units of 2^-(shift + 2).
+ * @param inclusive Whether the bounds themselves read back as the double.
+ * @return True if the digits read back as the double.
+ */
+
+    private static boolean readsBack(long digits, int decimals, int shift, long lower, long upper, boolean inclusive) {
+        int bitShift = shift + 2 - decimals;
+        long digitsHigh = digits >>> (64 - bitShift);
+        long digitsLow = digits << bitShift;
+
+        long five = POWERS_OF_FIVE[decimals];
+        int below = compare(Math.multiplyHigh(lower, five), lower * five, digitsHigh, digitsLow);
+        int above = compare(digitsHigh, digitsLow, Math.multiplyHigh(upper, five), upper * five);
+        return inclusive ? below <= 0 && above <= 0 : below < 0 && above < 0;
+    }
+
+    private static int compare(long aHigh, long aLow, long bHigh, long bLow) {
+        return aHigh != bHigh ? Long.compareUnsigned(aHigh, bHigh) : Long.compareUnsigned(aLow, bLow);
+    }
+
+    private static int writeFixed(long digits, int decimals, byte[] target, int offset) {
+        long unit = POWERS_OF_TEN[decimals];
+        long fraction = digits % unit;
+        while (decimals > 1 && fraction % 10 == 0) { // Drop trailing zeros, keeping one digit
+            fraction /= 10;
+            decimals--;
+        }
+        offset = writeDigits(digits / unit, target, offset, 1);
+        target[offset++] = '.';
+        return writeDigits(fraction, target, offset, decimals);
+    }
+
+/**
+ * Writes a non-negative number in decimal, padded with leading zeros.
+ *
+ * @param number The number to write.
+ * @param target The array to write to.
+ * @param offset The index of the first byte to write.
+ * @param minDigits The minimum number of digits to write.
+ * @return The index after the last byte written.
+ */
+
+    private static int writeDigits(long number, byte[] target, int offset, int minDigits) {
+        int count = 1;
+        for (long rest = number / 10; rest > 0; rest /= 10) {
+            count++;
+        }
+        count = Math.max(count, minDigits);
+        for (int i = offset + count - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        return offset + count;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ *
+ * OPCODE.JAVA
+ *
+ * The Opcode class lists the instruction set produced by the Parser and
+ * executed by the Model. Every instruction occupies Program.WIDTH ints in the
+ * code array: the opcode followed by up to three operands.
+ *
+ * The fused instructions at the end do the work of a whole statement of a common
+ * shape, "v = v + k" or "if v < k goto n", without evaluating an expression. They
+ * are put in by the Optimizer and only run in the interpreter loop, which falls
+ * back to the plain instruction when the variable is unassigned or expressions
+ * are traced; the compilers see the plain program (see Program.plain).
+ *
+ * Any two of the opcodes above can also be paired into a superinstruction,
+ * pair(first, second), which stands in place of the first of two consecutive
+ * instructions and runs both in one dispatch. Which pairs are worth it is
+ * learnt from an OpcodeProfile of earlier runs.
+ */
+
+public final class Opcode {
+    public static final int NOP = 0;    // No operation
+    public static final int PRINT = 1;  // expression
+    public static final int ASSIGN = 2; // variable slot, expression
+    public static final int IF_EQ = 3;  // left expression, right expression, target
+    public static final int IF_GT = 4;  // left expression, right expression, target
+    public static final int IF_LT = 5;  // left expression, right expression, target
+    public static final int IF_GE = 6;  // left expression, right expression, target
+    public static final int IF_LE = 7;  // left expression, right expression, target
+    public static final int GOTO = 8;   // target
+    public static final int END = 9;
+    public static final int ERROR = 10; // message reported when the line is reached
+    public static final int ADD_CONST = 11;   // variable slot, constant: v = v + constants[index]
+    public static final int IF_EQ_CONST = 12; // variable slot, constant, target
+    public static final int IF_GT_CONST = 13; // variable slot, constant, target
+    public static final int IF_LT_CONST = 14; // variable slot, constant, target
+    public static final int IF_GE_CONST = 15; // variable slot, constant, target
+    public static final int IF_LE_CONST = 16; // variable slot, constant, target
+
+    /** Added to a comparison opcode such as IF_LT to get its fused form, IF_LT_CONST. */
+    public static final int CONST_FORM = IF_EQ_CONST - IF_EQ;
+
+    /** The number of opcodes for single instructions, which are 0 to COUNT - 1. */
+    public static final int COUNT = 17;
+
+    /** The opcodes from here on are pairs (see pair). */
+    public static final int PAIRS = 32;
+
+    private static final String[] NAMES = {
+        "nop", "print", "assign", "if=", "if>", "if<", "if>=", "if<=", "goto", "end", "error",
+        "add", "if=k", "if>k", "if<k", "if>=k", "if<=k"
+    };
+
+    private Opcode() {
+    }
+
+/**
+ * Returns a readable mnemonic for an opcode, used when listing or tracing programs.
+ *
+ * @param opcode The opcode to name.
+ * @return The mnemonic of the opcode.
+ */
+
+    public static String name(int opcode) {
+        if (opcode >= PAIRS && opcode < PAIRS + COUNT * COUNT) {
+            return NAMES[first(opcode)] + "+" + NAMES[second(opcode)];
+        }
+        return opcode >= 0 && opcode < NAMES.length ? NAMES[opcode] : "op" + opcode;
+    }
+
+/**
+ * Converts a mnemonic back to the opcode of a single instruction.
+ *
+ * @param name The mnemonic, as returned by name().
+ * @return The opcode, or -1 if no single instruction has that name.
+ */
+
+    public static int parse(String name) {
+        for (int opcode = 0; opcode < NAMES.length; opcode++) {
+            if (NAMES[opcode].equals(name)) {
+                return opcode;
+            }
+        }
+        return -1;
+    }
+
+/**
+ * Returns the superinstruction that runs two consecutive instructions.
+ *
+ * @param first The opcode of the first instruction, which must be able to fall through.
+ * @param second The opcode of the instruction after it.
+ * @return The opcode of the pair.
+ */
+
+    public static int pair(int first, int second) {
+        return PAIRS + first * COUNT + second;
+    }
+
+/**
+ * Returns the opcode of the instruction a superinstruction stands in place of.
+ *
+ * @param opcode Any opcode.
+ * @return The first opcode of a pair, or the opcode itself if it is not a pair.
+ */
+
+    public static int first(int opcode) {
+        return opcode < PAIRS ? opcode : (opcode - PAIRS) / COUNT;
+    }
+
+/**
+ * Returns the opcode of the second instruction of a superinstruction.
+ *
+ * @param opcode A pair opcode.
+ * @return The opcode of the instruction after the one it stands in place of.
+ */
+
+    public static int second(int opcode) {
+        return (opcode - PAIRS) % COUNT;
+    }
+
+/**
+ * Tells whether an instruction can go on with the next one, so that it can be
+ * the first of a pair.
+ *
+ * @param opcode The opcode of a single instruction.
+ * @return False for "goto" and "end", which never do.
+ */
+
+    public static boolean fallsThrough(int opcode) {
+        return opcode != GOTO && opcode != END;
+    }
+}
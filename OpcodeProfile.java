@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * OPCODEPROFILE.JAVA
+ *
+ * The OpcodeProfile class counts how often each opcode runs straight after the
+ * instruction before it in the program, while programs run in the interpreter
+ * loop (see Model.setOpcodeProfile). These are the pairs a superinstruction can
+ * run in one dispatch (see Opcode.pair). The instructions on the two sides of a
+ * jump are not next to each other, so jumps are not counted.
+ *
+ * Profiles can be saved and loaded, so the counts of training runs over many
+ * programs, such as production programs or the benchmark corpus, add up in one
+ * file. The Model then turns the hottest pairs in it into superinstructions in
+ * the programs it loads (see Model.setSuperinstructions). A profile also counts
+ * the instructions run and the dispatches they took, which differ by the number
+ * of instructions superinstructions ran along with the one before.
+ */
+
+public final class OpcodeProfile {
+    /** Pairs run for less than this share of the instructions are not worth a superinstruction. */
+    private static final double MIN_SHARE = 0.01;
+
+    private final long[] sequences = new long[Opcode.COUNT * Opcode.COUNT]; // By first * COUNT + second
+    private long instructions = 0;
+    private long dispatches = 0;
+    private int previousIndex = -2;
+    private int previousOpcode = 0;
+
+/**
+ * Starts counting a new run, which does not continue the instruction the last
+ * one ended with.
+ */
+
+    void startRun() {
+        previousIndex = -2;
+    }
+
+/**
+ * Counts one dispatch of the interpreter loop.
+ *
+ * @param code The instructions of the program being run.
+ * @param index The index of the instruction dispatched.
+ * @param count The number of instructions it ran: 2 for a superinstruction that
+ *              also ran the next one, otherwise 1.
+ */
+
+    void record(int[] code, int index, int count) {
+        dispatches++;
+        instructions += count;
+        for (int i = index; i < index + count; i++) {
+            int opcode = Opcode.first(code[i * Program.WIDTH]);
+            if (i == previousIndex + 1) {
+                sequences[previousOpcode * Opcode.COUNT + opcode]++;
+            }
+            previousIndex = i;
+            previousOpcode = opcode;
+        }
+    }
+
+/**
+ * Adds the counts of another profile to this one.
+ *
+ * @param other The profile to add.
+ */
+
+    public void add(OpcodeProfile other) {
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] += other.sequences[i];
+        }
+        instructions += other.instructions;
+        dispatches += other.dispatches;
+    }
+
+/**
+ * Returns the number of instructions run.
+ *
+ * @return The instruction count, which is also the number of dispatches it
+ *         would take without superinstructions.
+ */
+
+    public long instructions() {
+        return instructions;
+    }
+
+/**
+ * Returns the number of times the interpreter loop dispatched an instruction.
+ *
+ * @return The dispatch count.
+ */
+
+    public long dispatches() {
+        return dispatches;
+    }
+
+/**
+ * Returns how often one opcode ran straight after another.
+ *
+ * @param first The opcode of the first instruction.
+ * @param second The opcode of the instruction after it.
+ * @return The number of times the pair ran.
+ */
+
+    public long count(int first, int second) {
+        return sequences[first * Opcode.COUNT + second];
+    }
+
+/**
+ * Selects the pairs to turn into superinstructions: the ones run most often,
+ * among those whose first instruction can fall through.
+ *
+ * @param max The most pairs to select.
+ * @return Whether each pair is selected, by first * Opcode.COUNT + second.
+ */
+
+    boolean[] selectPairs(int max) {
+        boolean[] selected = new boolean[sequences.length];
+        for (int n = 0; n < max; n++) {
+            int best = -1;
+            for (int i = 0; i < sequences.length; i++) {
+                if (!selected[i] && Opcode.fallsThrough(i / Opcode.COUNT) && sequences[i] > 0
+                        && sequences[i] >= MIN_SHARE * instructions
+                        && (best == -1 || sequences[i] > sequences[best])) {
+                    best = i;
+                }
+            }
+            if (best == -1) {
+                break;
+            }
+            selected[best] = true;
+        }
+        return selected;
+    }
+
+/**
+ * Describes the profile: the dispatches with and without superinstructions, and
+ * the pairs run most often.
+ *
+ * @param top How many pairs to list.
+ * @return The report, one item per line.
+ */
+
+    public String report(int top) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-38s %d%n", "Instructions run:", instructions));
+        report.append(String.format("%-38s %d%n", "Dispatches without superinstructions:", instructions));
+        report.append(String.format("%-38s %d", "Dispatches with superinstructions:", dispatches));
+        if (instructions > 0) {
+            report.append(String.format(" (%.1f%% fewer)", 100.0 * (instructions - dispatches) / instructions));
+        }
+        report.append('\n');
+        report.append("Hottest instruction pairs:\n");
+        boolean[] listed = new boolean[sequences.length];
+        for (int n = 0; n < top; n++) {
+            int best = -1;
+            for (int i = 0; i < sequences.length; i++) {
+                if (!listed[i] && sequences[i] > 0 && (best == -1 || sequences[i] > sequences[best])) {
+                    best = i;
+                }
+            }
+            if (best == -1) {
+                break;
+            }
+            listed[best] = true;
+            report.append(String.format("  %-16s %14d %6.1f%%%n",
+                    Opcode.name(Opcode.pair(best / Opcode.COUNT, best % Opcode.COUNT)),
+                    sequences[best], 100.0 * sequences[best] / instructions));
+        }
+        return report.toString();
+    }
+
+/**
+ * Writes the profile to a text file, one count per line.
+ *
+ * @param file The file to write.
+ * @throws IOException if the file cannot be written.
+ */
+
+    public void save(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("instructions " + instructions);
+        lines.add("dispatches " + dispatches);
+        for (int i = 0; i < sequences.length; i++) {
+            if (sequences[i] > 0) {
+                lines.add(Opcode.name(i / Opcode.COUNT) + " " + Opcode.name(i % Opcode.COUNT) + " " + sequences[i]);
+            }
+        }
+        Files.write(file, lines);
+    }
+
+/**
+ * Reads a profile written by save().
+ *
+ * @param file The file to read.
+ * @return The profile.
+ * @throws IOException if the file cannot be read.
+ * @throws IllegalArgumentException if a line of the file is not a count.
+ */
+
+    public static OpcodeProfile load(Path file) throws IOException {
+        OpcodeProfile profile = new OpcodeProfile();
+        for (String line : Files.readAllLines(file)) {
+            String[] fields = line.trim().split("\\s+");
+            try {
+                if (fields.length == 2 && fields[0].equals("instructions")) {
+                    profile.instructions = Long.parseLong(fields[1]);
+                } else if (fields.length == 2 && fields[0].equals("dispatches")) {
+                    profile.dispatches = Long.parseLong(fields[1]);
+                } else if (fields.length == 3 && Opcode.parse(fields[0]) != -1 && Opcode.parse(fields[1]) != -1) {
+                    profile.sequences[Opcode.parse(fields[0]) * Opcode.COUNT + Opcode.parse(fields[1])] =
+                            Long.parseLong(fields[2]);
+                } else if (!line.isBlank()) {
+                    throw new IllegalArgumentException("Invalid opcode profile line: " + line);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid opcode profile line: " + line);
+            }
+        }
+        return profile;
+    }
+}
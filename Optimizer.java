@@ -0,0 +1,292 @@
+import java.util.Arrays;
+
+/**
+ *
+ * OPTIMIZER.JAVA
+ *
+ * The Optimizer class simplifies the expressions of a Program after it has been
+ * parsed, so every tier evaluates less while running it. Constant subexpressions
+ * such as "(56 + 6)" are computed once, operations that cannot change a value are
+ * dropped and division by a power of two becomes a multiplication (see
+ * Expression.simplify).
+ *
+ * Constants are also propagated into variables. A variable that has one
+ * assignment in the program, and whose assigned expression is a constant, holds
+ * that constant wherever the assignment has certainly run: at every instruction
+ * that cannot be reached from the start of the program without going through it.
+ * Reads of the variable there are replaced by the constant, which may make more
+ * assignments constant in turn. The assignment itself is kept, so the output is
+ * unchanged.
+ *
+ * Last, statements of the shapes "v = v + k", "v = v - k" and "if v < k goto n"
+ * (with any comparison, and either operand order) become fused instructions,
+ * which the interpreter runs without evaluating an expression (see Opcode).
+ * Consecutive instructions whose opcodes form one of the pairs selected from an
+ * OpcodeProfile become superinstructions as well.
+ *
+ * This reasons about runs that start at the first instruction. A run resumed in
+ * the middle may find variables changed since it stopped, so the Model goes back
+ * to the program as parsed when that can happen.
+ */
+
+final class Optimizer {
+    /** Above this many instructions times variables, only expressions are folded. */
+    private static final int MAX_CELLS = 1 << 20;
+
+    private static final boolean[] NOTHING_KNOWN = new boolean[0];
+
+    private Optimizer() {
+    }
+
+/**
+ * Simplifies the expressions of a program.
+ *
+ * @param program The program as parsed.
+ * @return A program that prints the same output and runs the same instructions,
+ *         or the program itself if nothing could be simplified.
+ */
+
+    static Program optimize(Program program) {
+        return optimize(program, null);
+    }
+
+/**
+ * Simplifies the expressions of a program and pairs instructions into
+ * superinstructions.
+ *
+ * @param program The program as parsed.
+ * @param pairs The opcode pairs to fuse (see OpcodeProfile.selectPairs), or null for none.
+ * @return A program that prints the same output and runs the same instructions,
+ *         or the program itself if nothing could be simplified.
+ */
+
+    static Program optimize(Program program, boolean[] pairs) {
+        Expression[] expressions = program.expressions.clone();
+        for (int i = 0; i < expressions.length; i++) {
+            expressions[i] = expressions[i].simplify(NOTHING_KNOWN, null);
+        }
+
+        int size = program.size();
+        int slots = program.symbols.size();
+        if ((long) size * slots <= MAX_CELLS) {
+            propagateConstants(program, expressions);
+        }
+
+        for (int i = 0; i < expressions.length; i++) {
+            if (expressions[i] != program.expressions[i]) {
+                return fuse(program.withExpressions(expressions), pairs);
+            }
+        }
+        return fuse(program, pairs);
+    }
+
+/**
+ * Replaces the statements that have a fused form by their fused instruction,
+ * then the selected pairs of instructions by superinstructions. A pair stands in
+ * place of its first instruction; the second keeps its own opcode, since other
+ * instructions may jump to it.
+ *
+ * @param program The program with its expressions simplified.
+ * @param pairs The opcode pairs to fuse, or null for none.
+ * @return The program with fused instructions, or the program itself if it has
+ *         none to fuse.
+ */
+
+    private static Program fuse(Program program, boolean[] pairs) {
+        int[] code = program.code.clone();
+        double[] constants = new double[program.size()];
+        int constantCount = 0;
+        for (int index = 0; index < program.size(); index++) {
+            int pc = index * Program.WIDTH;
+            int opcode = code[pc];
+            if (opcode == Opcode.ASSIGN) {
+                int slot = code[pc + 1];
+                Expression expression = program.expressions[code[pc + 2]];
+                int[] ops = expression.code;
+                if (ops.length != 5) {
+                    continue;
+                }
+                if (ops[4] == Expression.ADD && ops[0] == Expression.LOAD && ops[1] == slot && ops[2] == Expression.CONST) {
+                    constants[constantCount] = expression.constants[ops[3]];
+                } else if (ops[4] == Expression.ADD && ops[2] == Expression.LOAD && ops[3] == slot && ops[0] == Expression.CONST) {
+                    constants[constantCount] = expression.constants[ops[1]];
+                } else if (ops[4] == Expression.SUB && ops[0] == Expression.LOAD && ops[1] == slot && ops[2] == Expression.CONST) {
+                    constants[constantCount] = -expression.constants[ops[3]]; // x - k is x + -k, exactly
+                } else {
+                    continue;
+                }
+                code[pc] = Opcode.ADD_CONST;
+                code[pc + 2] = constantCount++;
+            } else if (opcode >= Opcode.IF_EQ && opcode <= Opcode.IF_LE) {
+                Expression left = program.expressions[code[pc + 1]];
+                Expression right = program.expressions[code[pc + 2]];
+                if (isLoad(left) && right.isConstant()) {
+                    code[pc + 1] = left.code[1];
+                    constants[constantCount] = right.constants[right.code[1]];
+                } else if (left.isConstant() && isLoad(right)) {
+                    opcode = mirror(opcode); // k < v is v > k
+                    code[pc + 1] = right.code[1];
+                    constants[constantCount] = left.constants[left.code[1]];
+                } else {
+                    continue;
+                }
+                code[pc] = opcode + Opcode.CONST_FORM;
+                code[pc + 2] = constantCount++;
+            }
+        }
+        boolean paired = false;
+        for (int index = 0; pairs != null && index + 1 < program.size(); index++) {
+            int pc = index * Program.WIDTH;
+            int first = code[pc];
+            int second = code[pc + Program.WIDTH];
+            if (Opcode.fallsThrough(first) && pairs[first * Opcode.COUNT + second]) {
+                code[pc] = Opcode.pair(first, second);
+                paired = true;
+            }
+        }
+        if (constantCount == 0 && !paired) {
+            return program;
+        }
+        return program.withFusedCode(code, Arrays.copyOf(constants, constantCount));
+    }
+
+    private static boolean isLoad(Expression expression) {
+        return expression.code.length == 2 && expression.code[0] == Expression.LOAD;
+    }
+
+    private static int mirror(int opcode) {
+        switch (opcode) {
+            case Opcode.IF_GT: return Opcode.IF_LT;
+            case Opcode.IF_LT: return Opcode.IF_GT;
+            case Opcode.IF_GE: return Opcode.IF_LE;
+            case Opcode.IF_LE: return Opcode.IF_GE;
+            default: return opcode;
+        }
+    }
+
+    private static void propagateConstants(Program program, Expression[] expressions) {
+        int[] code = program.code;
+        int size = program.size();
+        int slots = program.symbols.size();
+        int[] assignments = new int[slots];
+        int[] assignedAt = new int[slots];
+        for (int index = 0; index < size; index++) {
+            int pc = index * Program.WIDTH;
+            if (code[pc] == Opcode.ASSIGN) {
+                assignments[code[pc + 1]]++;
+                assignedAt[code[pc + 1]] = index;
+            }
+        }
+
+        boolean[][] known = new boolean[size][slots]; // Variables with a known value, by instruction
+        double[] values = new double[slots];
+        boolean[] propagated = new boolean[slots];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int slot = 0; slot < slots; slot++) {
+                if (propagated[slot] || assignments[slot] != 1) {
+                    continue;
+                }
+                Expression assigned = expressions[code[assignedAt[slot] * Program.WIDTH + 2]];
+                if (!assigned.isConstant()) {
+                    continue;
+                }
+                propagated[slot] = true;
+                values[slot] = assigned.constants[assigned.code[1]];
+                boolean[] bypassed = reachableWithout(program, assignedAt[slot]);
+                for (int index = 0; index < size; index++) {
+                    known[index][slot] = !bypassed[index];
+                }
+                changed = true;
+            }
+            if (changed) {
+                for (int index = 0; index < size; index++) {
+                    simplifyInstruction(program, index, expressions, known[index], values);
+                }
+            }
+        }
+    }
+
+    private static void simplifyInstruction(Program program, int index, Expression[] expressions,
+                                            boolean[] known, double[] values) {
+        int pc = index * Program.WIDTH;
+        int[] code = program.code;
+        switch (code[pc]) {
+            case Opcode.PRINT:
+                expressions[code[pc + 1]] = expressions[code[pc + 1]].simplify(known, values);
+                break;
+            case Opcode.ASSIGN:
+                expressions[code[pc + 2]] = expressions[code[pc + 2]].simplify(known, values);
+                break;
+            case Opcode.IF_EQ:
+            case Opcode.IF_GT:
+            case Opcode.IF_LT:
+            case Opcode.IF_GE:
+            case Opcode.IF_LE:
+                expressions[code[pc + 1]] = expressions[code[pc + 1]].simplify(known, values);
+                expressions[code[pc + 2]] = expressions[code[pc + 2]].simplify(known, values);
+                break;
+            default:
+                break;
+        }
+    }
+
+/**
+ * Finds the instructions a run can reach from the start of the program without
+ * executing a given instruction. The instruction itself is reached, but nothing
+ * is reached through it.
+ *
+ * @param program The program.
+ * @param avoided The index of the instruction runs may not pass.
+ * @return Whether each instruction can be reached, by index.
+ */
+
+    private static boolean[] reachableWithout(Program program, int avoided) {
+        int size = program.size();
+        int[] code = program.code;
+        boolean[] reached = new boolean[size];
+        int[] pending = new int[size];
+        int count = 0;
+        if (size > 0) {
+            reached[0] = true;
+            pending[count++] = 0;
+        }
+        while (count > 0) {
+            int index = pending[--count];
+            if (index == avoided) {
+                continue;
+            }
+            int pc = index * Program.WIDTH;
+            int next = index + 1;
+            int target = -1;
+            switch (code[pc]) {
+                case Opcode.IF_EQ:
+                case Opcode.IF_GT:
+                case Opcode.IF_LT:
+                case Opcode.IF_GE:
+                case Opcode.IF_LE:
+                    target = code[pc + 3];
+                    break;
+                case Opcode.GOTO:
+                    target = code[pc + 1];
+                    next = -1;
+                    break;
+                case Opcode.END:
+                    next = -1;
+                    break;
+                default:
+                    break;
+            }
+            if (next >= 0 && next < size && !reached[next]) {
+                reached[next] = true;
+                pending[count++] = next;
+            }
+            if (target >= 0 && target < size && !reached[target]) {
+                reached[target] = true;
+                pending[count++] = target;
+            }
+        }
+        return reached;
+    }
+}
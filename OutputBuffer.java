@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * OUTPUTBUFFER.JAVA
+ *
+ * The OutputBuffer class is the Model's reusable output buffer. Text is encoded
+ * as UTF-8 straight into a fixed-size direct buffer, which is handed to the current
+ * OutputSink whenever it fills up or is flushed. However much a program prints,
+ * the Model never holds more than CAPACITY bytes of it.
+ */
+
+public final class OutputBuffer {
+    private static final int CAPACITY = 8192;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CAPACITY);
+    private final byte[] number = new byte[NumberFormatter.MAX_LENGTH];
+    private boolean basicNumbers = false;
+    private OutputSink sink;
+    private long flushed = 0;
+
+/**
+ * Creates a buffer that writes to a sink.
+ *
+ * @param sink The sink receiving the output.
+ */
+
+    public OutputBuffer(OutputSink sink) {
+        this.sink = sink;
+    }
+
+/**
+ * Flushes pending output to the current sink and sends future output to another.
+ *
+ * @param sink The new sink.
+ */
+
+    public void setSink(OutputSink sink) {
+        flush();
+        this.sink = sink;
+    }
+
+/**
+ * Appends text.
+ *
+ * @param text The text to append.
+ * @return This buffer.
+ */
+
+    public OutputBuffer append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isHighSurrogate(ch) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(ch, text.charAt(++i)));
+            } else {
+                append(ch);
+            }
+        }
+        return this;
+    }
+
+/**
+ * Appends a character. Unpaired surrogates are written as '?'.
+ *
+ * @param ch The character to append.
+ * @return This buffer.
+ */
+
+    public OutputBuffer append(char ch) {
+        if (ch < 0x80) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) ch);
+        } else if (Character.isSurrogate(ch)) {
+            append('?');
+        } else {
+            appendCodePoint(ch);
+        }
+        return this;
+    }
+
+/**
+ * Appends the decimal form of a number, as NumberFormatter writes it.
+ *
+ * @param value The number to append.
+ * @return This buffer.
+ */
+
+    public OutputBuffer append(double value) {
+        int length = NumberFormatter.format(value, basicNumbers, number);
+        if (buffer.remaining() < length) {
+            flush();
+        }
+        buffer.put(number, 0, length);
+        return this;
+    }
+
+/**
+ * Chooses how integer values are appended: "5" in BASIC style, "5.0" otherwise.
+ *
+ * @param basicNumbers True for BASIC style.
+ */
+
+    public void setBasicNumbers(boolean basicNumbers) {
+        this.basicNumbers = basicNumbers;
+    }
+
+/**
+ * Returns the number of bytes written since the buffer was last reset,
+ * including bytes not yet handed to the sink.
+ *
+ * @return The output size in bytes.
+ */
+
+    public long written() {
+        return flushed + buffer.position();
+    }
+
+/**
+ * Hands all buffered bytes to the sink.
+ *
+ * @throws UncheckedIOException if the sink fails to write them.
+ */
+
+    public void flush() {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        int length = buffer.remaining();
+        try {
+            sink.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing program output", e);
+        } finally {
+            buffer.clear();
+        }
+        flushed += length;
+    }
+
+/**
+ * Discards buffered bytes and restarts the byte count.
+ */
+
+    public void reset() {
+        buffer.clear();
+        flushed = 0;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (buffer.remaining() < 4) {
+            flush(); // Never split a character between two writes
+        }
+        if (codePoint < 0x800) {
+            buffer.put((byte) (0xC0 | (codePoint >> 6)));
+        } else if (codePoint < 0x10000) {
+            buffer.put((byte) (0xE0 | (codePoint >> 12)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        } else {
+            buffer.put((byte) (0xF0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        }
+        buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+    }
+}
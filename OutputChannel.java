@@ -0,0 +1,83 @@
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ *
+ * OUTPUTCHANNEL.JAVA
+ *
+ * The OutputChannel class carries program output from the thread running the
+ * Model to the View; it is the OutputSink of programs run from the window. The
+ * Model writes chunks of output to the channel, and the View drains it on the
+ * event dispatch thread at its own pace, several chunks at a time. The channel
+ * holds at most CAPACITY chunks: a program that prints faster than the window
+ * can show waits instead of filling the heap.
+ */
+
+public final class OutputChannel implements OutputSink {
+    private static final int CAPACITY = 256;
+
+    private final BlockingQueue<String> chunks = new ArrayBlockingQueue<>(CAPACITY);
+    private volatile boolean closed = false;
+
+/**
+ * Queues a chunk of output, waiting while the channel is full.
+ *
+ * @param bytes The UTF-8 encoded output to queue.
+ * @throws InterruptedIOException if the thread is interrupted while waiting.
+ */
+
+    @Override
+    public void write(ByteBuffer bytes) throws InterruptedIOException {
+        if (!bytes.hasRemaining()) {
+            return;
+        }
+        String chunk = StandardCharsets.UTF_8.decode(bytes).toString();
+        try {
+            chunks.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing program output");
+        }
+    }
+
+/**
+ * Marks the end of the output. Chunks already queued can still be drained.
+ */
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+/**
+ * Moves queued chunks into a buffer, stopping once the buffer has grown by at
+ * least maxChars characters or the channel is empty.
+ *
+ * @param target The buffer to append the chunks to.
+ * @param maxChars The number of characters after which to stop.
+ * @return The number of characters moved.
+ */
+
+    public int drainTo(StringBuilder target, int maxChars) {
+        int moved = 0;
+        String chunk;
+        while (moved < maxChars && (chunk = chunks.poll()) != null) {
+            target.append(chunk);
+            moved += chunk.length();
+        }
+        return moved;
+    }
+
+/**
+ * Returns whether the output has ended and every chunk has been drained.
+ *
+ * @return True once nothing more will come out of the channel.
+ */
+
+    public boolean isFinished() {
+        return closed && chunks.isEmpty();
+    }
+}
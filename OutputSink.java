@@ -0,0 +1,35 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * OUTPUTSINK.JAVA
+ *
+ * An OutputSink is where the Model sends program output. The Model formats output
+ * into a reusable byte buffer and hands it to the sink whenever the buffer fills
+ * up, at regular points while a program runs, and when the run ends. Output is
+ * UTF-8 encoded, and a buffer handed to a sink never ends in the middle of a
+ * character.
+ */
+
+public interface OutputSink {
+
+/**
+ * Consumes all remaining bytes of the buffer. The buffer belongs to the Model and
+ * is reused after the call returns, so a sink that keeps the bytes must copy them.
+ *
+ * @param bytes The output to write, between the buffer's position and limit.
+ * @throws IOException if the output cannot be written.
+ */
+
+    void write(ByteBuffer bytes) throws IOException;
+
+/**
+ * Releases any resources held by the sink. The default implementation does nothing.
+ *
+ * @throws IOException if the sink cannot be closed cleanly.
+ */
+
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * OUTPUTSTORE.JAVA
+ *
+ * The OutputStore class keeps program output in a temporary file instead of in
+ * memory, so the output window can hold any amount of it. To find a line quickly
+ * it remembers the file offset of every BLOCK-th line; reading a line means
+ * seeking to the start of its block and skipping at most BLOCK - 1 lines. Memory
+ * use is therefore one long per BLOCK lines of output, plus a read buffer.
+ *
+ * The store is not thread-safe; the View only uses it on the event dispatch thread.
+ */
+
+public final class OutputStore {
+    private static final int BLOCK = 1024;
+    private static final int MAX_LINE_CHARS = 4096; // Longer lines are cut off when read back
+
+    private FileChannel file;
+    private Path path;
+    private long size = 0;           // Bytes written
+    private long completeLines = 0;  // Lines ended by a newline
+    private boolean endsWithNewline = true;
+    private long[] blockOffsets = new long[64];
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private final byte[] lineBytes = new byte[MAX_LINE_CHARS * 4];
+
+/**
+ * Appends output to the store.
+ *
+ * @param text The output to append; it may end in the middle of a line.
+ */
+
+    public void append(CharSequence text) {
+        if (text.length() == 0) {
+            return;
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            FileChannel channel = channel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, size + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error storing program output", e);
+        }
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') { // Never part of a multi-byte UTF-8 character
+                completeLines++;
+                if (completeLines % BLOCK == 0) {
+                    int block = (int) (completeLines / BLOCK);
+                    if (block == blockOffsets.length) {
+                        blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                    }
+                    blockOffsets[block] = size + i + 1;
+                }
+            }
+        }
+        size += bytes.length;
+        endsWithNewline = bytes[bytes.length - 1] == '\n';
+    }
+
+/**
+ * Returns the number of lines in the store, counting an unfinished last line.
+ *
+ * @return The line count.
+ */
+
+    public long lineCount() {
+        return completeLines + (endsWithNewline ? 0 : 1);
+    }
+
+/**
+ * Reads a range of lines. Lines longer than MAX_LINE_CHARS are cut off.
+ *
+ * @param first The index of the first line to read.
+ * @param count The maximum number of lines to read.
+ * @return The lines read, without their newlines; fewer than count at the end of the output.
+ */
+
+    public List<String> readLines(long first, int count) {
+        List<String> lines = new ArrayList<>(count);
+        if (first >= lineCount() || count <= 0) {
+            return lines;
+        }
+
+        int block = (int) (first / BLOCK);
+        long toSkip = first - (long) block * BLOCK;
+        long position = blockOffsets[block];
+        int lineLength = 0;
+        try {
+            while (position < size && lines.size() < count) {
+                readBuffer.clear();
+                int read = file.read(readBuffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                for (int i = 0; i < read && lines.size() < count; i++) {
+                    byte b = readBuffer.get(i);
+                    if (b == '\n') {
+                        if (toSkip > 0) {
+                            toSkip--;
+                        } else {
+                            lines.add(new String(lineBytes, 0, lineLength, StandardCharsets.UTF_8));
+                        }
+                        lineLength = 0;
+                    } else if (toSkip == 0 && lineLength < lineBytes.length) {
+                        lineBytes[lineLength++] = b;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading program output", e);
+        }
+        if (lineLength > 0 && lines.size() < count && toSkip == 0) {
+            lines.add(new String(lineBytes, 0, lineLength, StandardCharsets.UTF_8)); // Unfinished last line
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).length() > MAX_LINE_CHARS) {
+                lines.set(i, lines.get(i).substring(0, MAX_LINE_CHARS));
+            }
+        }
+        return lines;
+    }
+
+/**
+ * Removes all output and deletes the temporary file.
+ */
+
+    public void clear() {
+        if (file != null) {
+            try {
+                file.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // The file is only a cache; a leftover temp file is harmless
+            }
+            file = null;
+        }
+        size = 0;
+        completeLines = 0;
+        endsWithNewline = true;
+        blockOffsets = new long[64];
+    }
+
+    private FileChannel channel() throws IOException {
+        if (file == null) {
+            path = Files.createTempFile("basic-output", ".txt");
+            path.toFile().deleteOnExit();
+            file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return file;
+    }
+}
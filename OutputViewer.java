@@ -0,0 +1,131 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.List;
+
+/**
+ *
+ * OUTPUTVIEWER.JAVA
+ *
+ * The OutputViewer class shows program output of any size. The output lives in
+ * an OutputStore on disk, and only the lines that fit in the window are read and
+ * painted, so scrolling through millions of lines uses as little memory as
+ * showing a few. The scroll bar counts lines rather than pixels. While the view
+ * is scrolled to the end, it follows new output as it arrives.
+ */
+
+public class OutputViewer extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    private final OutputStore store = new OutputStore();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JComponent lines = new JComponent() {
+        @Override
+        protected void paintComponent(Graphics g) {
+            paintLines(g);
+        }
+    };
+
+/**
+* Creates an empty output viewer with the colors of the interpreter's output window.
+*/
+
+    public OutputViewer() {
+        super(new BorderLayout());
+        lines.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        lines.setBackground(Color.BLACK);
+        lines.setForeground(Color.GREEN);
+        lines.setOpaque(true);
+        add(lines, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.EAST);
+
+        scrollBar.addAdjustmentListener(e -> lines.repaint());
+        lines.addMouseWheelListener(e -> scrollBar.setValue(scrollBar.getValue()
+                + e.getWheelRotation() * scrollBar.getUnitIncrement() * 3));
+        lines.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updateScrollBar(isAtEnd());
+            }
+        });
+    }
+
+/**
+* Adds output to the end of the viewer.
+*
+* @param text The output to add; it may end in the middle of a line.
+*/
+
+    public void append(CharSequence text) {
+        boolean follow = isAtEnd();
+        store.append(text);
+        updateScrollBar(follow);
+        lines.repaint();
+    }
+
+/**
+* Replaces all output in the viewer.
+*
+* @param text The new output.
+*/
+
+    public void setText(String text) {
+        store.clear();
+        store.append(text);
+        updateScrollBar(false);
+        scrollBar.setValue(0);
+        lines.repaint();
+    }
+
+/**
+* Removes all output from the viewer.
+*/
+
+    public void clear() {
+        setText("");
+    }
+
+/**
+* Returns the number of lines held by the viewer.
+*
+* @return The line count.
+*/
+
+    public long getLineCount() {
+        return store.lineCount();
+    }
+
+    private int visibleRows() {
+        int lineHeight = lines.getFontMetrics(lines.getFont()).getHeight();
+        return Math.max(1, lines.getHeight() / lineHeight);
+    }
+
+    private boolean isAtEnd() {
+        return scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum();
+    }
+
+    private void updateScrollBar(boolean follow) {
+        // Scroll bars use int positions; output beyond Integer.MAX_VALUE lines is not reachable
+        int total = (int) Math.min(store.lineCount(), Integer.MAX_VALUE);
+        int rows = visibleRows();
+        int value = follow ? Math.max(0, total - rows) : Math.min(scrollBar.getValue(), Math.max(0, total - rows));
+        scrollBar.setValues(value, Math.min(rows, Math.max(total, 1)), 0, Math.max(total, 1));
+        scrollBar.setBlockIncrement(rows);
+    }
+
+    private void paintLines(Graphics g) {
+        g.setColor(lines.getBackground());
+        g.fillRect(0, 0, lines.getWidth(), lines.getHeight());
+        g.setColor(lines.getForeground());
+        g.setFont(lines.getFont());
+
+        FontMetrics metrics = g.getFontMetrics();
+        int y = metrics.getAscent();
+        List<String> visible = store.readLines(scrollBar.getValue(), visibleRows() + 1);
+        for (String line : visible) {
+            g.drawString(line, 2, y);
+            y += metrics.getHeight();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ *
+ * PARSER.JAVA
+ *
+ * The Parser class compiles BASIC source code into a Program. Each line is
+ * stripped of its comment and line number, classified, and turned into one
+ * instruction exactly once, when the program is loaded. Blank and comment-only
+ * lines produce no instruction at all; a jump to one of them lands on the next
+ * instruction instead. Expressions are lexed
+ * at the same time so the interpreter never works on source text while running.
+ *
+ * Lines that cannot be compiled become ERROR instructions, so the error is
+ * reported in the program output when the line is reached, as before. Jump
+ * targets are different: they are resolved to instruction indices once the
+ * whole program has been read, and a missing target fails the load.
+ */
+
+public final class Parser {
+    private int[] code = new int[16 * Program.WIDTH];
+    private int size = 0;
+    private final ArrayList<Integer> lineNumbers = new ArrayList<>();
+    private final ArrayList<String> sourceLines = new ArrayList<>();
+    private final ArrayList<Expression> expressions = new ArrayList<>();
+    private final ArrayList<String> strings = new ArrayList<>();
+    private final HashMap<Integer, Integer> lineIndex = new HashMap<>();
+    private final ArrayList<Jump> jumps = new ArrayList<>();
+    private final SymbolTable symbols;
+    private int currentLineNumber = -1;
+    private String currentSource = "";
+
+    private Parser(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+/**
+ * Compiles the given BASIC source code into a Program.
+ *
+ * @param source The BASIC code, one statement per line.
+ * @param symbols The symbol table that assigns slots to the program's variables.
+ * @return The compiled program.
+ * @throws IllegalArgumentException if a "goto" or "if" targets a line that does not exist.
+ */
+
+    public static Program parse(String source, SymbolTable symbols) {
+        Parser parser = new Parser(symbols);
+        for (String line : source.split("\n")) {
+            parser.parseLine(line.trim());
+        }
+        parser.resolveJumps();
+        return parser.build();
+    }
+
+/**
+ * Compiles one trimmed source line into a single instruction, or into nothing
+ * if the line holds no statement.
+ *
+ * @param line The source line to compile.
+ */
+
+    private void parseLine(String line) {
+        int lineNumber = leadingLineNumber(line);
+        if (lineNumber != -1) {
+            lineIndex.putIfAbsent(lineNumber, size); // The first line with a number wins
+        }
+        currentLineNumber = lineNumber;
+        currentSource = line;
+
+        int commentIndex = line.indexOf("//");
+        if (commentIndex != -1) {
+            line = line.substring(0, commentIndex).trim(); // Keep only the code part before //
+        }
+
+        int digits = 0;
+        while (digits < line.length() && Character.isDigit(line.charAt(digits))) {
+            digits++;
+        }
+        line = line.substring(digits).trim(); // Remove line number if it exists
+
+        if (line.isEmpty()) {
+            return; // Comments and blank lines cost nothing at run time
+        }
+
+        if (line.startsWith("print")) {
+            emit(Opcode.PRINT, expression(line.substring(5).trim()), 0, 0);
+        } else if (line.contains("=") && !line.contains("goto")) { // Detect assignment statements
+            parseAssignment(line);
+        } else if (line.startsWith("if")) {
+            parseIf(line.substring(2).trim());
+        } else if (line.startsWith("goto")) {
+            jump(line.substring(4).trim(), 1);
+            emit(Opcode.GOTO, 0, 0, 0);
+        } else if (line.equals("end")) {
+            emit(Opcode.END, 0, 0, 0);
+        } else {
+            error("Error: Unsupported statement: " + line);
+        }
+    }
+
+/**
+ * Compiles an assignment of the form "variable = expression".
+ *
+ * @param line The assignment statement, without its line number.
+ */
+
+    private void parseAssignment(String line) {
+        line = line.replaceAll(" ", "");
+        int equalIndex = line.indexOf("=");
+        String var = line.substring(0, equalIndex);
+        String expression = line.substring(equalIndex + 1);
+        emit(Opcode.ASSIGN, symbols.slotOf(var), expression(expression), 0);
+    }
+
+/**
+ * Compiles an "if" statement of the form "if condition goto target". The condition
+ * may be wrapped in parentheses and compares two expressions with =, >, <, >= or <=.
+ *
+ * @param line The "if" statement with the leading "if" keyword removed.
+ */
+
+    private void parseIf(String line) {
+        int gotoIndex = line.indexOf("goto");
+        if (gotoIndex == -1) {
+            error("Error: 'if' statement missing 'goto'");
+            return;
+        }
+
+        String condition = line.substring(0, gotoIndex).trim();
+        String targetLine = line.substring(gotoIndex + 4).trim();
+        if (condition.startsWith("(") && condition.endsWith(")")) {
+            condition = condition.substring(1, condition.length() - 1).trim();
+        }
+
+        int opIndex = -1;
+        for (int i = 0; i < condition.length() && opIndex == -1; i++) {
+            char ch = condition.charAt(i);
+            if (ch == '=' || ch == '<' || ch == '>') {
+                opIndex = i;
+            }
+        }
+        if (opIndex == -1) {
+            error("Error evaluating 'if' condition: Invalid condition: " + condition);
+            return;
+        }
+
+        int opcode;
+        int opLength = 1;
+        char ch = condition.charAt(opIndex);
+        boolean orEqual = opIndex + 1 < condition.length() && condition.charAt(opIndex + 1) == '=';
+        if (ch == '=') {
+            opcode = Opcode.IF_EQ;
+        } else if (ch == '>') {
+            opcode = orEqual ? Opcode.IF_GE : Opcode.IF_GT;
+            opLength = orEqual ? 2 : 1;
+        } else {
+            opcode = orEqual ? Opcode.IF_LE : Opcode.IF_LT;
+            opLength = orEqual ? 2 : 1;
+        }
+
+        String leftPart = condition.substring(0, opIndex).trim();
+        String rightPart = condition.substring(opIndex + opLength).trim();
+        jump(targetLine, 3);
+        emit(opcode, expression(leftPart), expression(rightPart), 0);
+    }
+
+/**
+ * Returns the line number at the start of a source line.
+ *
+ * @param line The trimmed source line.
+ * @return The line number, or -1 if the line does not start with one.
+ */
+
+    private static int leadingLineNumber(String line) {
+        int digits = 0;
+        while (digits < line.length() && digits < 9 && Character.isDigit(line.charAt(digits))) {
+            digits++;
+        }
+        return digits == 0 ? -1 : Integer.parseInt(line.substring(0, digits));
+    }
+
+/**
+ * Replaces the line number operand of every jump with the index of the target
+ * instruction, using the line index built while the program was read.
+ *
+ * @throws IllegalArgumentException listing every jump whose target line does not exist.
+ */
+
+    private void resolveJumps() {
+        StringBuilder missing = new StringBuilder();
+        for (Jump jump : jumps) {
+            Integer target = null;
+            if (!jump.targetLine.isEmpty() && jump.targetLine.length() <= 9
+                    && jump.targetLine.chars().allMatch(Character::isDigit)) {
+                target = lineIndex.get(Integer.parseInt(jump.targetLine));
+            }
+            if (target == null) {
+                if (missing.length() > 0) {
+                    missing.append("\n");
+                }
+                missing.append("Error: 'goto' target line not found: ").append(jump.targetLine)
+                        .append(" (in: ").append(sourceLines.get(jump.instruction)).append(")");
+            } else {
+                code[jump.instruction * Program.WIDTH + jump.operand] = target;
+            }
+        }
+        if (missing.length() > 0) {
+            throw new IllegalArgumentException(missing.toString());
+        }
+    }
+
+    private void jump(String targetLine, int operand) {
+        jumps.add(new Jump(size, operand, targetLine));
+    }
+
+    private void error(String message) {
+        emit(Opcode.ERROR, string(message), 0, 0);
+    }
+
+    private int expression(String source) {
+        expressions.add(Expression.compile(source, symbols));
+        return expressions.size() - 1;
+    }
+
+    private int string(String value) {
+        strings.add(value);
+        return strings.size() - 1;
+    }
+
+    private void emit(int opcode, int a, int b, int c) {
+        int pc = size * Program.WIDTH;
+        if (pc + Program.WIDTH > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[pc] = opcode;
+        code[pc + 1] = a;
+        code[pc + 2] = b;
+        code[pc + 3] = c;
+        lineNumbers.add(currentLineNumber);
+        sourceLines.add(currentSource);
+        size++;
+    }
+
+    private Program build() {
+        int[] numbers = new int[lineNumbers.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = lineNumbers.get(i);
+        }
+        return new Program(Arrays.copyOf(code, size * Program.WIDTH), size, numbers,
+                sourceLines.toArray(new String[0]),
+                expressions.toArray(new Expression[0]),
+                strings.toArray(new String[0]),
+                lineIndex, symbols);
+    }
+
+/**
+ * A jump whose target line still has to be resolved to an instruction index.
+ */
+
+    private static class Jump {
+        final int instruction;
+        final int operand;
+        final String targetLine;
+
+        Jump(int instruction, int operand, String targetLine) {
+            this.instruction = instruction;
+            this.operand = operand;
+            this.targetLine = targetLine;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *
+ * PROGRAM.JAVA
+ *
+ * The Program class is the compiled form of a BASIC program. It is produced once
+ * by the Parser when a program is loaded and is never modified afterwards.
+ *
+ * Instructions are stored in a flat int array, Program.WIDTH ints per instruction:
+ * the opcode followed by its operands. Operands refer to the expression and string
+ * tables of the program, variables are slots in the program's SymbolTable and jump
+ * targets are instruction indices, so the run loop only deals with ints.
+ */
+
+public final class Program {
+    public static final int WIDTH = 4;
+
+    public static final Program EMPTY = new Program(new int[0], 0, new int[0], new String[0],
+            new Expression[0], new String[0], new HashMap<>(), new SymbolTable());
+
+    final int[] code;
+    final int size;
+    final int[] lineNumbers;
+    final String[] sourceLines;
+    final Expression[] expressions;
+    final String[] strings;
+    final SymbolTable symbols;
+    final double[] constants; // Operands of fused instructions
+    private final Map<Integer, Integer> lineIndex;
+    private final Program plain; // The program without fused instructions, or null if this is it
+
+    Program(int[] code, int size, int[] lineNumbers, String[] sourceLines, Expression[] expressions,
+            String[] strings, Map<Integer, Integer> lineIndex, SymbolTable symbols) {
+        this(code, size, lineNumbers, sourceLines, expressions, strings, lineIndex, symbols, new double[0], null);
+    }
+
+    private Program(int[] code, int size, int[] lineNumbers, String[] sourceLines, Expression[] expressions,
+                    String[] strings, Map<Integer, Integer> lineIndex, SymbolTable symbols,
+                    double[] constants, Program plain) {
+        this.code = code;
+        this.size = size;
+        this.lineNumbers = lineNumbers;
+        this.sourceLines = sourceLines;
+        this.expressions = expressions;
+        this.strings = strings;
+        this.lineIndex = lineIndex;
+        this.symbols = symbols;
+        this.constants = constants;
+        this.plain = plain;
+    }
+
+/**
+ * Returns a copy of the program with other expressions, such as the ones the
+ * Optimizer has simplified. Instructions, jump targets and slots are shared.
+ *
+ * @param newExpressions The expression table, indexed like the old one.
+ * @return The new program.
+ */
+
+    Program withExpressions(Expression[] newExpressions) {
+        return new Program(code, size, lineNumbers, sourceLines, newExpressions, strings, lineIndex, symbols);
+    }
+
+/**
+ * Returns a copy of the program that runs fused instructions (see Opcode.ADD_CONST)
+ * in place of some of its own. Both have the same instructions at the same indices,
+ * so a run can switch between them at any instruction.
+ *
+ * @param fusedCode The instructions, some of them fused.
+ * @param fusedConstants The constants the fused instructions refer to.
+ * @return The new program.
+ */
+
+    Program withFusedCode(int[] fusedCode, double[] fusedConstants) {
+        return new Program(fusedCode, size, lineNumbers, sourceLines, expressions, strings, lineIndex, symbols,
+                fusedConstants, this);
+    }
+
+/**
+ * Returns the program without fused instructions. Only the interpreter loop runs
+ * fused instructions; the compilers work on this form of the program.
+ *
+ * @return The plain program, which is this program if it has no fused instructions.
+ */
+
+    Program plain() {
+        return plain != null ? plain : this;
+    }
+
+/**
+ * Returns the number of instructions in the program.
+ *
+ * @return The instruction count.
+ */
+
+    public int size() {
+        return size;
+    }
+
+/**
+ * Returns the opcode of an instruction.
+ *
+ * @param index The index of the instruction.
+ * @return The opcode stored for the instruction.
+ */
+
+    public int opcode(int index) {
+        return code[index * WIDTH];
+    }
+
+/**
+ * Returns the BASIC line number an instruction was compiled from.
+ *
+ * @param index The index of the instruction.
+ * @return The line number, or -1 if the source line had no number.
+ */
+
+    public int lineNumber(int index) {
+        return lineNumbers[index];
+    }
+
+/**
+ * Returns the symbol table holding the slots of the program's variables.
+ *
+ * @return The symbol table of the program.
+ */
+
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+/**
+ * Finds the index of the instruction compiled from a BASIC line number.
+ *
+ * @param lineNumber The line number to look up.
+ * @return The index of the instruction, or -1 if no line has that number.
+ */
+
+    public int indexOfLine(int lineNumber) {
+        Integer index = lineIndex.get(lineNumber);
+        return index == null ? -1 : index;
+    }
+
+/**
+ * Returns the trimmed source text an instruction was compiled from.
+ *
+ * @param index The index of the instruction.
+ * @return The source line.
+ */
+
+    public String sourceLine(int index) {
+        return sourceLines[index];
+    }
+
+/**
+ * Returns a readable listing of the compiled instructions, one per line.
+ *
+ * @return The program listing.
+ */
+
+    public String disassemble() {
+        StringBuilder listing = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            int pc = i * WIDTH;
+            listing.append(i).append(": ").append(Opcode.name(code[pc]));
+            switch (Opcode.first(code[pc])) { // A superinstruction has the operands of its first instruction
+                case Opcode.PRINT:
+                    listing.append(' ').append(expressions[code[pc + 1]]);
+                    break;
+                case Opcode.ASSIGN:
+                    listing.append(' ').append(symbols.name(code[pc + 1])).append(" = ").append(expressions[code[pc + 2]]);
+                    break;
+                case Opcode.IF_EQ:
+                case Opcode.IF_GT:
+                case Opcode.IF_LT:
+                case Opcode.IF_GE:
+                case Opcode.IF_LE:
+                    listing.append(' ').append(expressions[code[pc + 1]]).append(", ").append(expressions[code[pc + 2]])
+                            .append(" -> ").append(code[pc + 3]);
+                    break;
+                case Opcode.ADD_CONST:
+                    listing.append(' ').append(symbols.name(code[pc + 1])).append(", ").append(constants[code[pc + 2]]);
+                    break;
+                case Opcode.IF_EQ_CONST:
+                case Opcode.IF_GT_CONST:
+                case Opcode.IF_LT_CONST:
+                case Opcode.IF_GE_CONST:
+                case Opcode.IF_LE_CONST:
+                    listing.append(' ').append(symbols.name(code[pc + 1])).append(", ").append(constants[code[pc + 2]])
+                            .append(" -> ").append(code[pc + 3]);
+                    break;
+                case Opcode.GOTO:
+                    listing.append(' ').append(code[pc + 1]);
+                    break;
+                case Opcode.ERROR:
+                    listing.append(' ').append(strings[code[pc + 1]]);
+                    break;
+                default:
+                    break;
+            }
+            listing.append('\n');
+        }
+        return listing.toString();
+    }
+}
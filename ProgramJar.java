@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ *
+ * PROGRAMJAR.JAVA
+ *
+ * The ProgramJar class compiles a BASIC program ahead of time into a runnable jar,
+ * for "java Main compile". The jar holds the program as the class BasicProgram,
+ * whose main method runs it, plus BasicRuntime and the output classes it needs:
+ * neither the parser nor the interpreter is included, so starting the program
+ * costs no more than loading a handful of small classes. The runtime classes are
+ * copied from the classpath of the running compiler.
+ */
+
+public final class ProgramJar {
+    static final String MAIN_CLASS = "BasicProgram";
+    private static final String[] RUNTIME_CLASSES = {
+            "BasicRuntime", "OutputBuffer", "OutputSink", "FileOutputSink", "NumberFormatter"
+    };
+
+    private ProgramJar() {
+    }
+
+/**
+ * Compiles a program and writes it as a runnable jar, replacing the file if it exists.
+ *
+ * @param program The program to compile.
+ * @param basicNumbers Whether integer values are printed as 5 instead of 5.0.
+ * @param jar The jar file to write.
+ * @throws IOException if the jar cannot be written or a runtime class is missing.
+ * @throws IllegalArgumentException if the program is too large to compile.
+ */
+
+    public static void write(Program program, boolean basicNumbers, Path jar) throws IOException {
+        byte[] mainClass = BytecodeCompiler.compileStandalone(program, MAIN_CLASS, basicNumbers);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, MAIN_CLASS);
+
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file, manifest)) {
+            addClass(out, MAIN_CLASS, mainClass);
+            for (String name : RUNTIME_CLASSES) {
+                try (InputStream in = ProgramJar.class.getResourceAsStream("/" + name + ".class")) {
+                    if (in == null) {
+                        throw new IOException("Runtime class not found: " + name);
+                    }
+                    addClass(out, name, in.readAllBytes());
+                }
+            }
+        }
+    }
+
+    private static void addClass(JarOutputStream out, String name, byte[] classFile) throws IOException {
+        out.putNextEntry(new JarEntry(name + ".class"));
+        out.write(classFile);
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ *
+ * SPECULATION.JAVA
+ *
+ * The Speculation class holds the guards of programs compiled on the assumption
+ * that some variables only ever hold integers (see BytecodeCompiler.compile).
+ * Such variables live in long locals and their arithmetic runs on longs, which
+ * gives the same result as the double arithmetic of the interpreter only while
+ * every value is an integer of at most 2^53 and is not -0.0. Each guard checks
+ * that and throws FAILED when it does not hold; the compiled code then gives the
+ * instruction back to the Model, which runs it again with doubles.
+ */
+
+final class Speculation {
+    /** Every integer up to this size is exactly a double. */
+    static final long MAX_EXACT = 1L << 53;
+
+    /** Thrown by a guard; preallocated, so failing costs no stack trace. */
+    static final Failed FAILED = new Failed();
+
+/**
+ * The exception the guards throw. It is not an IllegalArgumentException, so the
+ * compiled code never reports it as an error of the program.
+ */
+
+    static final class Failed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Failed() {
+            super("Speculation failed", null, false, false);
+        }
+    }
+
+    private Speculation() {
+    }
+
+/**
+ * Tells whether a value can be held in a long variable.
+ *
+ * @param value The value.
+ * @return True if the value is an integer of at most 2^53 and not -0.0.
+ */
+
+    static boolean isExactInteger(double value) {
+        return (double) (long) value == value && Math.abs(value) <= MAX_EXACT
+                && Double.doubleToRawLongBits(value) != Long.MIN_VALUE;
+    }
+
+/**
+ * Tells whether the variables a compiled program speculates on currently hold
+ * values it can run with.
+ *
+ * @param frame The variable values.
+ * @param integerSlots Which variables the program holds as longs.
+ * @return True if each of those variables holds an exact integer.
+ */
+
+    static boolean fits(double[] frame, boolean[] integerSlots) {
+        for (int slot = 0; slot < integerSlots.length; slot++) {
+            if (integerSlots[slot] && !isExactInteger(frame[slot])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+/**
+ * Converts a value stored into a long variable.
+ *
+ * @param value The value.
+ * @return The value as a long.
+ * @throws Failed if the value is not an exact integer.
+ */
+
+    static long toLong(double value) {
+        if (!isExactInteger(value)) {
+            throw FAILED;
+        }
+        return (long) value;
+    }
+
+    static long add(long a, long b) {
+        return exact(a + b); // Both are at most 2^53, so the sum cannot overflow
+    }
+
+    static long subtract(long a, long b) {
+        return exact(a - b);
+    }
+
+    static long multiply(long a, long b) {
+        long product;
+        try {
+            product = Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            throw FAILED;
+        }
+        if (product == 0 && (a < 0 || b < 0)) {
+            throw FAILED; // The double product is -0.0
+        }
+        return exact(product);
+    }
+
+    private static long exact(long value) {
+        if (value > MAX_EXACT || value < -MAX_EXACT) {
+            throw FAILED;
+        }
+        return value;
+    }
+}
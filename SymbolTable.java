@@ -0,0 +1,68 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ *
+ * SYMBOLTABLE.JAVA
+ *
+ * The SymbolTable class gives every variable name used by a program a slot
+ * number. Slots are handed out by the Parser while compiling, so at run time a
+ * variable is just an index into the Model's frame of doubles. Names are only
+ * needed again for output, error messages and debugging.
+ */
+
+public final class SymbolTable {
+    private final HashMap<String, Integer> slots = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+
+/**
+ * Returns the slot of a variable, assigning the next free slot if the name
+ * has not been seen before.
+ *
+ * @param name The variable name.
+ * @return The slot of the variable.
+ */
+
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = names.size();
+            slots.put(name, slot);
+            names.add(name);
+        }
+        return slot;
+    }
+
+/**
+ * Returns the slot of a variable without assigning one.
+ *
+ * @param name The variable name.
+ * @return The slot of the variable, or -1 if the name is unknown.
+ */
+
+    public int lookup(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+/**
+ * Returns the name of the variable stored in a slot.
+ *
+ * @param slot The slot number.
+ * @return The variable name.
+ */
+
+    public String name(int slot) {
+        return names.get(slot);
+    }
+
+/**
+ * Returns the number of slots handed out so far.
+ *
+ * @return The number of variables in the table.
+ */
+
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ *
+ * TIER.JAVA
+ *
+ * The Tier class names the ways the Model can execute a program:
+ *
+ *   INTERPRETER - the instruction loop in the Model (the default)
+ *   CLOSURES    - a tree of small pre-bound objects built by the ClosureCompiler,
+ *                 which is almost free to build and avoids decoding instructions
+ *   BYTECODE    - a JVM class generated by the BytecodeCompiler, which is the
+ *                 fastest once HotSpot has compiled it but costs the most to build
+ *   TIERED      - starts in the interpreter and compiles programs with a hot loop
+ *                 to bytecode in the background (see Model.setTierThreshold),
+ *                 holding variables seen only with integer values as longs
+ *
+ * Every tier prints the same output, counts the same steps and honours the same
+ * limits. Programs are always interpreted while tracing.
+ */
+
+public final class Tier {
+    public static final int INTERPRETER = 0;
+    public static final int CLOSURES = 1;
+    public static final int BYTECODE = 2;
+    public static final int TIERED = 3;
+
+    private Tier() {
+    }
+
+/**
+ * Converts a tier name such as "closures" to a tier.
+ *
+ * @param name The tier name, case insensitive.
+ * @return The matching tier.
+ * @throws IllegalArgumentException if the name is not a tier.
+ */
+
+    public static int parse(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "interpreter": return INTERPRETER;
+            case "closures": return CLOSURES;
+            case "bytecode": return BYTECODE;
+            case "tiered": return TIERED;
+            default: throw new IllegalArgumentException("Unknown tier: " + name);
+        }
+    }
+}
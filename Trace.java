@@ -0,0 +1,154 @@
+/**
+ *
+ * TRACE.JAVA
+ *
+ * The Trace class is the Model's debugging log. It replaces the console output
+ * the interpreter used to print on every step with level-gated events:
+ *
+ *   OFF        - nothing is traced (the default)
+ *   STATEMENT  - program start and end, every executed line, output and errors
+ *   EXPRESSION - additionally the values of expressions and conditions
+ *   VERBOSE    - additionally jumps and other interpreter internals
+ *
+ * Callers check the level before calling an event method, and event methods take
+ * primitives, so a disabled trace costs one field comparison: no strings are built
+ * and nothing is allocated. Formatted lines are handed to a TraceSink, which may
+ * write them synchronously or on a background thread (see AsyncTraceSink).
+ */
+
+public final class Trace {
+    public static final int OFF = 0;
+    public static final int STATEMENT = 1;
+    public static final int EXPRESSION = 2;
+    public static final int VERBOSE = 3;
+
+    public static final Trace NONE = new Trace(OFF, line -> { });
+
+    final int level;
+    private final TraceSink sink;
+    private final StringBuilder line = new StringBuilder();
+
+/**
+ * Creates a trace that writes every event up to the given level to a sink.
+ *
+ * @param level One of OFF, STATEMENT, EXPRESSION or VERBOSE.
+ * @param sink The sink that receives the formatted trace lines.
+ */
+
+    public Trace(int level, TraceSink sink) {
+        if (level < OFF || level > VERBOSE) {
+            throw new IllegalArgumentException("Invalid trace level: " + level);
+        }
+        this.level = level;
+        this.sink = sink;
+    }
+
+/**
+ * Converts a level name such as "statement" or "verbose" to a trace level.
+ *
+ * @param name The level name, case insensitive.
+ * @return The matching trace level.
+ * @throws IllegalArgumentException if the name is not a trace level.
+ */
+
+    public static int parseLevel(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "off": return OFF;
+            case "statement": return STATEMENT;
+            case "expression": return EXPRESSION;
+            case "verbose": return VERBOSE;
+            default: throw new IllegalArgumentException("Unknown trace level: " + name);
+        }
+    }
+
+/**
+ * Traces a fixed message.
+ *
+ * @param message The message to trace.
+ */
+
+    public void message(String message) {
+        sink.write(message);
+    }
+
+/**
+ * Traces a message followed by a number.
+ *
+ * @param message The message to trace.
+ * @param value The number that completes the message.
+ */
+
+    public void message(String message, long value) {
+        line.setLength(0);
+        line.append(message).append(value);
+        flush();
+    }
+
+/**
+ * Traces the execution of one instruction.
+ *
+ * @param program The running program.
+ * @param index The index of the instruction about to execute.
+ */
+
+    public void statement(Program program, int index) {
+        line.setLength(0);
+        line.append('[').append(index).append("] ").append(program.sourceLine(index));
+        flush();
+    }
+
+/**
+ * Traces the value of an expression or variable.
+ *
+ * @param label What was evaluated, e.g. an expression or a variable name.
+ * @param value The resulting value.
+ */
+
+    public void value(Object label, double value) {
+        line.setLength(0);
+        line.append("  ").append(label).append(" => ").append(value);
+        flush();
+    }
+
+/**
+ * Traces the outcome of an "if" condition.
+ *
+ * @param left The value of the left-hand side.
+ * @param opcode The comparison opcode.
+ * @param right The value of the right-hand side.
+ * @param result Whether the condition holds.
+ */
+
+    public void condition(double left, int opcode, double right, boolean result) {
+        line.setLength(0);
+        line.append("  ").append(left).append(' ').append(Opcode.name(opcode).substring(2)).append(' ').append(right)
+                .append(" => ").append(result);
+        flush();
+    }
+
+/**
+ * Traces a jump to another instruction.
+ *
+ * @param program The running program.
+ * @param targetIndex The index of the instruction jumped to.
+ */
+
+    public void jump(Program program, int targetIndex) {
+        line.setLength(0);
+        line.append("  jump to line ").append(program.lineNumber(targetIndex))
+                .append(" (index ").append(targetIndex).append(')');
+        flush();
+    }
+
+/**
+ * Flushes and releases the sink.
+ */
+
+    public void close() {
+        sink.close();
+    }
+
+    private void flush() {
+        sink.write(line.toString());
+    }
+}
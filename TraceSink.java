@@ -0,0 +1,27 @@
+/**
+ *
+ * TRACESINK.JAVA
+ *
+ * A TraceSink receives the formatted lines produced by a Trace. Sinks are only
+ * called while tracing is enabled, so they may allocate and block freely.
+ */
+
+@FunctionalInterface
+public interface TraceSink {
+
+/**
+ * Writes one trace line.
+ *
+ * @param line The formatted trace line, without a trailing newline.
+ */
+
+    void write(String line);
+
+/**
+ * Writes out any buffered trace lines and releases the sink. The default
+ * implementation does nothing.
+ */
+
+    default void close() {
+    }
+}
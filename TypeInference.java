@@ -0,0 +1,679 @@
+import java.util.Arrays;
+
+/**
+ *
+ * TYPEINFERENCE.JAVA
+ *
+ * The TypeInference class works out from the text of a Program alone what holds
+ * for its variables before each instruction: which of them are certainly
+ * assigned, and the range of values each can hold, including whether it is
+ * always an exact integer (see Speculation). It is a forward dataflow analysis
+ * over the instructions and the jumps between them:
+ *
+ *  - An assignment gives its variable the range of its expression. Reading an
+ *    unassigned variable fails, so every variable an instruction reads is
+ *    certainly assigned after it; an instruction that may fail goes on to the
+ *    next one with nothing changed.
+ *  - An "if" comparing a variable narrows its range on each way out, such as
+ *    i <= 2999999 when "if i < 3000000 goto 30" jumps.
+ *  - Where paths meet, the states are joined. Ranges that keep growing round a
+ *    loop are widened, to just below 2^53 and then to infinity, so it ends;
+ *    then the instructions are run over the result again to narrow them back.
+ *
+ * The integer variables of the program are the assigned ones that are exact
+ * integers wherever they are held. The analysis assumes that of their values on
+ * entry too, since variables keep the values of earlier runs and programs; the
+ * Model checks it, and everything else the code compiled with these facts relies
+ * on, with holdsAt() before entering that code.
+ */
+
+final class TypeInference {
+    private static final int MAX_CELLS = 1 << 20; // Instructions times variables analysed at most
+    private static final int WIDEN_AFTER = 4;     // Joins at one instruction before it widens instead
+    private static final int NARROWING_PASSES = 8; // At most, as ranges can shrink without end
+    private static final int MAX_PASSES = 1000;    // Over the program before giving up without facts
+
+    private static final int IF_NE = -1; // The negation of Opcode.IF_EQ, for narrowing
+
+    // Bounds are computed with double arithmetic, which rounds 2^53 + 1 down to 2^53, so a
+    // range is only known to be exact below 2^53
+    private static final double MAX_EXACT = Speculation.MAX_EXACT - 1;
+
+/**
+ * A set of values a variable or an expression can have: the numbers between
+ * two bounds, possibly only the whole ones, and possibly NaN.
+ */
+
+    static final class Range {
+        static final Range ANY = new Range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false, true);
+        static final Range EXACT = new Range(-MAX_EXACT, MAX_EXACT, true, false);
+
+        final double low;
+        final double high;
+        final boolean integer; // Every value is a finite whole number other than -0.0
+        final boolean nan;     // The value may be NaN, which the bounds do not cover
+
+        private Range(double low, double high, boolean integer, boolean nan) {
+            // A bound such as infinity - infinity is NaN: the value may be NaN, and the bound is unknown
+            boolean nanBound = Double.isNaN(low) || Double.isNaN(high);
+            this.low = Double.isNaN(low) ? Double.NEGATIVE_INFINITY : low;
+            this.high = Double.isNaN(high) ? Double.POSITIVE_INFINITY : high;
+            this.integer = integer && !nanBound;
+            this.nan = nan || nanBound;
+        }
+
+        static Range of(double value) {
+            if (Double.isNaN(value)) {
+                return ANY;
+            }
+            return new Range(value, value, isWhole(value), false);
+        }
+
+/**
+ * Tells whether every value is an exact integer, so it can be held in a long.
+ *
+ * @return True if every value passes Speculation.isExactInteger().
+ */
+
+        boolean isExact() {
+            return integer && !nan && low >= -MAX_EXACT && high <= MAX_EXACT;
+        }
+
+        boolean contains(double value) {
+            if (Double.isNaN(value)) {
+                return nan;
+            }
+            return value >= low && value <= high && (!integer || isWhole(value));
+        }
+
+        static Range add(Range a, Range b) {
+            boolean nan = a.nan || b.nan || a.low == Double.NEGATIVE_INFINITY && b.high == Double.POSITIVE_INFINITY
+                    || a.high == Double.POSITIVE_INFINITY && b.low == Double.NEGATIVE_INFINITY;
+            return arithmetic(a.low + b.low, a.high + b.high, a.integer && b.integer, nan);
+        }
+
+        static Range subtract(Range a, Range b) {
+            boolean nan = a.nan || b.nan || a.high == Double.POSITIVE_INFINITY && b.high == Double.POSITIVE_INFINITY
+                    || a.low == Double.NEGATIVE_INFINITY && b.low == Double.NEGATIVE_INFINITY;
+            return arithmetic(a.low - b.high, a.high - b.low, a.integer && b.integer, nan);
+        }
+
+        static Range multiply(Range a, Range b) {
+            // Rounding is monotonic, so the extremes are at the corners, unless 0 * infinity is possible
+            boolean nan = a.nan || b.nan || a.hasZero() && b.hasInfinity() || b.hasZero() && a.hasInfinity();
+            if (nan) {
+                return ANY;
+            }
+            double p1 = a.low * b.low;
+            double p2 = a.low * b.high;
+            double p3 = a.high * b.low;
+            double p4 = a.high * b.high;
+            boolean negativeZero = a.hasZero() && b.low < 0 || b.hasZero() && a.low < 0;
+            return arithmetic(Math.min(Math.min(p1, p2), Math.min(p3, p4)), Math.max(Math.max(p1, p2), Math.max(p3, p4)),
+                    a.integer && b.integer && !negativeZero, false);
+        }
+
+        static Range divide(Range a, Range b) {
+            if (a.nan || b.nan || b.hasZero() || a.hasInfinity() && b.hasInfinity()) {
+                return ANY;
+            }
+            double q1 = a.low / b.low;
+            double q2 = a.low / b.high;
+            double q3 = a.high / b.low;
+            double q4 = a.high / b.high;
+            return new Range(Math.min(Math.min(q1, q2), Math.min(q3, q4)), Math.max(Math.max(q1, q2), Math.max(q3, q4)),
+                    false, false);
+        }
+
+        private static Range arithmetic(double low, double high, boolean integers, boolean nan) {
+            // Whole numbers stay whole in double arithmetic unless the result overflows
+            boolean finite = low > Double.NEGATIVE_INFINITY && high < Double.POSITIVE_INFINITY;
+            return new Range(low, high, integers && finite && !nan, nan);
+        }
+
+        Range join(Range other) {
+            return new Range(Math.min(low, other.low), Math.max(high, other.high),
+                    integer && other.integer, nan || other.nan);
+        }
+
+        Range widen(Range newer) {
+            double widenedLow = low;
+            double widenedHigh = high;
+            if (newer.low < low) {
+                widenedLow = newer.low >= -MAX_EXACT ? -MAX_EXACT : Double.NEGATIVE_INFINITY;
+            }
+            if (newer.high > high) {
+                widenedHigh = newer.high <= MAX_EXACT ? MAX_EXACT : Double.POSITIVE_INFINITY;
+            }
+            return new Range(widenedLow, widenedHigh, integer && newer.integer, nan || newer.nan);
+        }
+
+/**
+ * Narrows the range to the values for which "value op bound" is true.
+ *
+ * @param op Opcode.IF_EQ, IF_GT, IF_LT, IF_GE, IF_LE, or IF_NE.
+ * @param bound The range of the other side.
+ * @return The narrowed range, or null if the comparison cannot be true.
+ */
+
+        Range compare(int op, Range bound) {
+            double newLow = low;
+            double newHigh = high;
+            switch (op) {
+                case Opcode.IF_EQ:
+                    newLow = Math.max(low, bound.low);
+                    newHigh = Math.min(high, bound.high);
+                    break;
+                case Opcode.IF_GT:
+                    newLow = Math.max(low, integer ? Math.floor(bound.low) + 1 : bound.low);
+                    break;
+                case Opcode.IF_GE:
+                    newLow = Math.max(low, integer ? Math.ceil(bound.low) : bound.low);
+                    break;
+                case Opcode.IF_LT:
+                    newHigh = Math.min(high, integer ? Math.ceil(bound.high) - 1 : bound.high);
+                    break;
+                case Opcode.IF_LE:
+                    newHigh = Math.min(high, integer ? Math.floor(bound.high) : bound.high);
+                    break;
+                default:
+                    return this; // Not equal says little about a range
+            }
+            return newLow <= newHigh ? new Range(newLow, newHigh, integer, false) : null;
+        }
+
+        boolean same(Range other) {
+            return Double.compare(low, other.low) == 0 && Double.compare(high, other.high) == 0
+                    && integer == other.integer && nan == other.nan;
+        }
+
+        private boolean hasZero() {
+            return low <= 0 && high >= 0;
+        }
+
+        private boolean hasInfinity() {
+            return low == Double.NEGATIVE_INFINITY || high == Double.POSITIVE_INFINITY;
+        }
+
+        private static boolean isWhole(double value) {
+            return !Double.isInfinite(value) && value == Math.rint(value)
+                    && Double.doubleToRawLongBits(value) != Long.MIN_VALUE;
+        }
+    }
+
+/**
+ * What holds for the variables at one point of the program.
+ */
+
+    private static final class State {
+        final Range[] values;     // Ranges of the values, for when the variables are assigned
+        final boolean[] defined;  // Whether each variable is certainly assigned
+
+        State(Range[] values, boolean[] defined) {
+            this.values = values;
+            this.defined = defined;
+        }
+
+        State copy() {
+            return new State(values.clone(), defined.clone());
+        }
+    }
+
+    private interface Edge {
+        void to(int target, State state);
+    }
+
+    private final Program program;
+    private final boolean[] integerSlots;
+    private State[] states; // Before each instruction and at the end (index size); null if unreachable
+
+    private TypeInference(Program program, boolean[] integerSlots) {
+        this.program = program;
+        this.integerSlots = integerSlots;
+    }
+
+/**
+ * Analyses a program.
+ *
+ * @param program The program.
+ * @return The facts about its variables, or null if it is too large to analyse
+ *         or the analysis does not settle.
+ */
+
+    static TypeInference analyze(Program program) {
+        program = program.plain();
+        int variables = program.symbols.size();
+        if ((long) (program.size + 1) * Math.max(variables, 1) > MAX_CELLS) {
+            return null;
+        }
+        boolean[] integerSlots = new boolean[variables];
+        for (int index = 0; index < program.size; index++) {
+            if (program.code[index * Program.WIDTH] == Opcode.ASSIGN) {
+                integerSlots[program.code[index * Program.WIDTH + 1]] = true;
+            }
+        }
+        // Assuming fewer integer variables can only make the others less exact, so this ends
+        while (true) {
+            TypeInference inference = new TypeInference(program, integerSlots);
+            if (!inference.run()) {
+                return null;
+            }
+            boolean[] exact = inference.exactSlots();
+            if (Arrays.equals(exact, integerSlots)) {
+                return inference;
+            }
+            integerSlots = exact;
+        }
+    }
+
+/**
+ * Tells whether a variable holds an exact integer everywhere in the program.
+ *
+ * @param slot The variable slot.
+ * @return True if the variable can be held in a long.
+ */
+
+    boolean isInteger(int slot) {
+        return integerSlots[slot];
+    }
+
+/**
+ * Tells whether a variable is certainly assigned before an instruction runs.
+ *
+ * @param index The index of the instruction.
+ * @param slot The variable slot.
+ * @return True if reading the variable there cannot fail.
+ */
+
+    boolean isDefined(int index, int slot) {
+        return states[index] != null && states[index].defined[slot];
+    }
+
+/**
+ * Returns the range of a variable before an instruction runs.
+ *
+ * @param index The index of the instruction.
+ * @param slot The variable slot.
+ * @return The values the variable can hold there if it is assigned.
+ */
+
+    Range range(int index, int slot) {
+        return states[index] != null ? states[index].values[slot] : Range.ANY;
+    }
+
+/**
+ * Tells whether evaluating an expression before an instruction may fail.
+ *
+ * @param index The index of the instruction.
+ * @param expression The expression.
+ * @return True if it did not compile or reads a variable that may be unassigned.
+ */
+
+    boolean mayFail(int index, Expression expression) {
+        return states[index] == null || mayFail(states[index], expression);
+    }
+
+/**
+ * Tells whether the variables are in a state the analysis allows for before an
+ * instruction, so code compiled with these facts may start running there.
+ *
+ * @param index The index of the instruction.
+ * @param frame The variable values.
+ * @param defined Whether each variable has been assigned.
+ * @return False if a variable was changed in a way the program cannot do itself.
+ */
+
+    boolean holdsAt(int index, double[] frame, boolean[] defined) {
+        if (index >= program.size) {
+            return true;
+        }
+        State state = states[index];
+        if (state == null) {
+            return false;
+        }
+        for (int slot = 0; slot < integerSlots.length; slot++) {
+            if (defined[slot] ? !state.values[slot].contains(frame[slot]) : state.defined[slot]) {
+                return false;
+            }
+            if (integerSlots[slot] && !Speculation.isExactInteger(frame[slot])) {
+                return false; // Unassigned variables are 0
+            }
+        }
+        return true;
+    }
+
+/**
+ * Computes the state before each instruction.
+ *
+ * @return False if the states did not settle within MAX_PASSES passes.
+ */
+
+    private boolean run() {
+        int size = program.size;
+        int variables = integerSlots.length;
+        Range[] values = new Range[variables];
+        for (int slot = 0; slot < variables; slot++) {
+            values[slot] = integerSlots[slot] ? Range.EXACT : Range.ANY;
+        }
+        State entry = new State(values, new boolean[variables]);
+
+        // Run the instructions in order until no state changes
+        states = new State[size + 1];
+        states[0] = entry.copy();
+        int[] joins = new int[size + 1];
+        boolean[] changed = {true};
+        for (int pass = 0; changed[0]; pass++) {
+            if (pass == MAX_PASSES) {
+                return false;
+            }
+            changed[0] = false;
+            for (int index = 0; index < size; index++) {
+                if (states[index] != null) {
+                    flow(index, states[index], (target, state) -> {
+                        if (states[target] == null) {
+                            states[target] = state.copy();
+                            changed[0] = true;
+                        } else if (join(states[target], state, ++joins[target] > WIDEN_AFTER)) {
+                            changed[0] = true;
+                        }
+                    });
+                }
+            }
+        }
+
+        // Narrowing: run the instructions over the widened states again, without widening
+        for (int pass = 0; pass < NARROWING_PASSES; pass++) {
+            State[] narrowed = new State[size + 1];
+            narrowed[0] = entry.copy();
+            for (int index = 0; index < size; index++) {
+                if (states[index] != null) {
+                    flow(index, states[index], (target, state) -> {
+                        if (narrowed[target] == null) {
+                            narrowed[target] = state.copy();
+                        } else {
+                            join(narrowed[target], state, false);
+                        }
+                    });
+                }
+            }
+            boolean same = true;
+            for (int index = 0; index <= size && same; index++) {
+                same = narrowed[index] == null ? states[index] == null : sameState(narrowed[index], states[index]);
+            }
+            states = narrowed;
+            if (same) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameState(State a, State b) {
+        if (b == null || !Arrays.equals(a.defined, b.defined)) {
+            return false;
+        }
+        for (int slot = 0; slot < a.values.length; slot++) {
+            if (!a.values[slot].same(b.values[slot])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+/**
+ * Passes the state after an instruction on to each instruction it can go to.
+ *
+ * @param index The index of the instruction.
+ * @param in The state before it; not modified.
+ * @param edge Receives each following instruction with the state it gets.
+ */
+
+    private void flow(int index, State in, Edge edge) {
+        int[] code = program.code;
+        int pc = index * Program.WIDTH;
+        int next = index + 1;
+        switch (code[pc]) {
+            case Opcode.PRINT: {
+                Expression expression = program.expressions[code[pc + 1]];
+                if (mayFail(in, expression)) {
+                    edge.to(next, in);
+                }
+                if (expression.error == null) {
+                    edge.to(next, afterReading(in, expression));
+                }
+                break;
+            }
+            case Opcode.ASSIGN: {
+                int slot = code[pc + 1];
+                Expression expression = program.expressions[code[pc + 2]];
+                if (mayFail(in, expression)) {
+                    edge.to(next, in);
+                }
+                if (expression.error == null) {
+                    State out = afterReading(in, expression);
+                    out.values[slot] = evaluate(in, expression);
+                    out.defined[slot] = true;
+                    edge.to(next, out);
+                }
+                break;
+            }
+            case Opcode.IF_EQ:
+            case Opcode.IF_GT:
+            case Opcode.IF_LT:
+            case Opcode.IF_GE:
+            case Opcode.IF_LE: {
+                Expression left = program.expressions[code[pc + 1]];
+                Expression right = program.expressions[code[pc + 2]];
+                if (mayFail(in, left) || mayFail(in, right)) {
+                    edge.to(next, in);
+                }
+                if (left.error == null && right.error == null) {
+                    State read = afterReading(afterReading(in, left), right);
+                    State taken = compare(read, code[pc], left, right);
+                    if (taken != null) {
+                        edge.to(code[pc + 3], taken);
+                    }
+                    // NaN makes every comparison false, so only a comparison without it can be negated
+                    State notTaken = evaluate(read, left).nan || evaluate(read, right).nan
+                            ? read : compare(read, negate(code[pc]), left, right);
+                    if (notTaken != null) {
+                        edge.to(next, notTaken);
+                    }
+                }
+                break;
+            }
+            case Opcode.GOTO:
+                edge.to(code[pc + 1], in);
+                break;
+            case Opcode.END:
+                edge.to(program.size, in);
+                break;
+            default: // NOP and ERROR
+                edge.to(next, in);
+                break;
+        }
+    }
+
+/**
+ * Joins a state into the state of an instruction.
+ *
+ * @param into The state to update.
+ * @param state The state to add.
+ * @param widen Whether to widen the ranges that grow instead of just joining them.
+ * @return True if into changed.
+ */
+
+    private static boolean join(State into, State state, boolean widen) {
+        boolean changed = false;
+        for (int slot = 0; slot < into.values.length; slot++) {
+            Range old = into.values[slot];
+            Range joined = widen ? old.widen(state.values[slot]) : old.join(state.values[slot]);
+            if (!joined.same(old)) {
+                into.values[slot] = joined;
+                changed = true;
+            }
+            if (into.defined[slot] && !state.defined[slot]) {
+                into.defined[slot] = false;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+/**
+ * Narrows a state to where "left op right" is true.
+ *
+ * @param state The state before the comparison.
+ * @param op The comparison opcode, or IF_NE.
+ * @param left The left expression.
+ * @param right The right expression.
+ * @return The narrowed state, or null if the comparison cannot be true.
+ */
+
+    private State compare(State state, int op, Expression left, Expression right) {
+        Range leftRange = evaluate(state, left);
+        Range rightRange = evaluate(state, right);
+        Range newLeft = leftRange.compare(op, rightRange);
+        Range newRight = rightRange.compare(mirror(op), leftRange);
+        if (newLeft == null || newRight == null) {
+            return null;
+        }
+        int leftSlot = variableOnly(left);
+        int rightSlot = variableOnly(right);
+        if (leftSlot < 0 && rightSlot < 0) {
+            return state;
+        }
+        State narrowed = state.copy();
+        if (leftSlot >= 0) {
+            narrowed.values[leftSlot] = newLeft;
+        }
+        if (rightSlot >= 0 && rightSlot != leftSlot) {
+            narrowed.values[rightSlot] = newRight;
+        }
+        return narrowed;
+    }
+
+    private static int negate(int op) {
+        switch (op) {
+            case Opcode.IF_EQ: return IF_NE;
+            case Opcode.IF_GT: return Opcode.IF_LE;
+            case Opcode.IF_LT: return Opcode.IF_GE;
+            case Opcode.IF_GE: return Opcode.IF_LT;
+            default: return Opcode.IF_GT;
+        }
+    }
+
+    private static int mirror(int op) {
+        switch (op) {
+            case Opcode.IF_GT: return Opcode.IF_LT;
+            case Opcode.IF_LT: return Opcode.IF_GT;
+            case Opcode.IF_GE: return Opcode.IF_LE;
+            case Opcode.IF_LE: return Opcode.IF_GE;
+            default: return op; // IF_EQ and IF_NE
+        }
+    }
+
+/**
+ * Returns the slot of an expression that is just a variable.
+ *
+ * @param expression The expression.
+ * @return The slot, or -1 if the expression is anything else.
+ */
+
+    private static int variableOnly(Expression expression) {
+        int[] code = expression.code;
+        return code.length == 2 && code[0] == Expression.LOAD ? code[1] : -1;
+    }
+
+    private static boolean mayFail(State state, Expression expression) {
+        if (expression.error != null) {
+            return true;
+        }
+        int[] code = expression.code;
+        for (int pc = 0; pc < code.length; pc += 2) {
+            if (code[pc] == Expression.LOAD && !state.defined[code[pc + 1]]) {
+                return true;
+            }
+            if (code[pc] != Expression.CONST && code[pc] != Expression.LOAD) {
+                pc--; // Operators have no operand
+            }
+        }
+        return false;
+    }
+
+    private static State afterReading(State state, Expression expression) {
+        State read = state.copy();
+        int[] code = expression.code;
+        for (int pc = 0; pc < code.length; pc += 2) {
+            if (code[pc] == Expression.LOAD) {
+                read.defined[code[pc + 1]] = true;
+            } else if (code[pc] != Expression.CONST) {
+                pc--;
+            }
+        }
+        return read;
+    }
+
+/**
+ * Returns the range of an expression that compiled.
+ *
+ * @param state The state it is evaluated in.
+ * @param expression The expression.
+ * @return The values it can have.
+ */
+
+    private static Range evaluate(State state, Expression expression) {
+        int[] code = expression.code;
+        Range[] stack = new Range[expression.maxStack()];
+        int sp = 0;
+        int pc = 0;
+        while (pc < code.length) {
+            int op = code[pc++];
+            switch (op) {
+                case Expression.CONST:
+                    stack[sp++] = Range.of(expression.constants[code[pc++]]);
+                    break;
+                case Expression.LOAD:
+                    stack[sp++] = state.values[code[pc++]];
+                    break;
+                default: {
+                    Range right = stack[--sp];
+                    Range left = stack[--sp];
+                    stack[sp++] = apply(op, left, right);
+                    break;
+                }
+            }
+        }
+        return stack[0];
+    }
+
+/**
+ * Returns the range of a binary operator.
+ *
+ * @param op Expression.ADD, SUB, MUL or DIV.
+ * @param left The range of the left operand.
+ * @param right The range of the right operand.
+ * @return The range of the result.
+ */
+
+    static Range apply(int op, Range left, Range right) {
+        switch (op) {
+            case Expression.ADD: return Range.add(left, right);
+            case Expression.SUB: return Range.subtract(left, right);
+            case Expression.MUL: return Range.multiply(left, right);
+            default: return Range.divide(left, right);
+        }
+    }
+
+    private boolean[] exactSlots() {
+        boolean[] exact = integerSlots.clone();
+        for (State state : states) {
+            if (state != null) {
+                for (int slot = 0; slot < exact.length; slot++) {
+                    exact[slot] &= state.values[slot].isExact();
+                }
+            }
+        }
+        return exact;
+    }
+}
@@ -9,18 +9,30 @@ import java.awt.event.ActionListener;
  * The View class represents the user interface for the BASIC interpreter,
  * allowing users to enter code, execute it, and view output in a separate window.
  * It provides the main window for code input and an additional popup window for program output.
+ *
+ * Output of a running program is drained from an OutputChannel by a timer at no
+ * more than FRAMES_PER_SECOND, and everything that arrived since the last frame is
+ * added to the output area in a single insert.
  */
 
 public class View {
+    private static final int FRAMES_PER_SECOND = 30;
+    private static final int MAX_CHARS_PER_FRAME = 256 * 1024; // Keeps each frame short for huge outputs
+
     private JFrame mainFrame;
     private JFrame outputWindow; // Separate output window
     private JTextArea codeArea;
-    private JTextArea outputArea;
+    private OutputViewer outputArea;
     private JButton runButton;
+    private JButton stopButton;
     private JButton loadButton;
     private JButton saveButton;
     private JButton resetButton;
     private JButton infoButton;
+    private JLabel statusLabel;
+    private Timer outputTimer;
+    private OutputChannel outputChannel;
+    private final StringBuilder frameOutput = new StringBuilder();
 
 /**
 * Constructs the View, setting up the main UI components including the main frame,
@@ -42,12 +54,15 @@ public class View {
         // Buttons panel
         JPanel buttonPanel = new JPanel();
         runButton = new JButton("Run");
+        stopButton = new JButton("Stop");
+        stopButton.setEnabled(false);
         loadButton = new JButton("Load");
         saveButton = new JButton("Save");
         resetButton = new JButton("Reset");
         infoButton = new JButton("Info");
 
         buttonPanel.add(runButton);
+        buttonPanel.add(stopButton);
         buttonPanel.add(loadButton);
         buttonPanel.add(saveButton);
         buttonPanel.add(resetButton);
@@ -63,12 +78,16 @@ public class View {
         outputWindow.setLayout(new BorderLayout());
 
         // Output display area in the separate window
-        outputArea = new JTextArea();
-        outputArea.setEditable(false);
-        outputArea.setBackground(Color.BLACK);
-        outputArea.setForeground(Color.GREEN);
-        JScrollPane outputScrollPane = new JScrollPane(outputArea);
-        outputWindow.add(outputScrollPane, BorderLayout.CENTER);
+        // Only the visible lines are kept in memory; the rest is stored on disk
+        outputArea = new OutputViewer();
+        outputWindow.add(outputArea, BorderLayout.CENTER);
+
+        // Status line showing the progress of a running program
+        statusLabel = new JLabel(" ");
+        outputWindow.add(statusLabel, BorderLayout.SOUTH);
+
+        // Timer that moves streamed output into the output area, one batch per frame
+        outputTimer = new Timer(1000 / FRAMES_PER_SECOND, e -> drainOutput());
 
         // Add listener for the Info button to show program information dialog
         infoButton.addActionListener(e -> showInfoDialog());
@@ -111,6 +130,57 @@ public class View {
         outputWindow.setVisible(true); // Show the output window when output is ready
     }
 
+/**
+* Clears and shows the output window, then keeps adding the output arriving
+* through the given channel until the channel is finished.
+*
+* @param channel The channel the running program writes its output to.
+*/
+
+    public void startOutput(OutputChannel channel) {
+        outputArea.clear();
+        outputWindow.setVisible(true);
+        outputChannel = channel;
+        outputTimer.start();
+    }
+
+/**
+* Adds the output that arrived since the last frame to the output area.
+* Called by the output timer on the event dispatch thread.
+*/
+
+    private void drainOutput() {
+        frameOutput.setLength(0);
+        if (outputChannel.drainTo(frameOutput, MAX_CHARS_PER_FRAME) > 0) {
+            outputArea.append(frameOutput);
+        }
+        if (outputChannel.isFinished()) {
+            outputTimer.stop();
+        }
+    }
+
+/**
+* Shows a status message, such as the progress of a run, below the output.
+*
+* @param status The status message to display.
+*/
+
+    public void setStatus(String status) {
+        statusLabel.setText(status);
+    }
+
+/**
+* Switches the buttons between the running and the idle state: while a program
+* runs, only the "Stop" button can start or stop execution.
+*
+* @param running True while a program is running.
+*/
+
+    public void setRunning(boolean running) {
+        runButton.setEnabled(!running);
+        stopButton.setEnabled(running);
+    }
+
 /**
 * Returns the "Run" button.
 * 
@@ -121,6 +191,16 @@ public class View {
         return runButton;
     }
 
+/**
+* Returns the "Stop" button.
+* 
+* @return The button to stop a running program.
+*/
+
+    public JButton getStopButton() {
+        return stopButton;
+    }
+
 /**
 * Returns the "Load" button.
 * 
@@ -194,7 +274,7 @@ public class View {
 */
 
     public void clearOutput() {
-        outputArea.setText("");
+        outputArea.clear();
     }
 
 /**
@@ -227,6 +307,16 @@ public class View {
         runButton.addActionListener(listener);
     }
 
+/**
+* Adds an ActionListener to the "Stop" button.
+* 
+* @param listener The ActionListener to add.
+*/
+
+    public void addStopButtonListener(ActionListener listener) {
+        stopButton.addActionListener(listener);
+    }
+
 /**
 * Adds an ActionListener to the "Load" button.
 * 
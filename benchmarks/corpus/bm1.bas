@@ -0,0 +1,7 @@
+// Rugg/Feldman BM1: an empty counting loop, written with "if ... goto"
+// since the dialect has no FOR/NEXT
+10 k = 0
+20 k = k + 1
+30 if (k < 1000) goto 20
+40 print k
+50 end
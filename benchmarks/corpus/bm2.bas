@@ -0,0 +1,7 @@
+// Rugg/Feldman BM2: the counting loop with the test at the top
+10 k = 0
+20 k = k + 1
+30 if (k >= 1000) goto 50
+40 goto 20
+50 print k
+60 end
@@ -0,0 +1,7 @@
+// Rugg/Feldman BM3: BM2 plus arithmetic on the loop variable
+10 k = 0
+20 k = k + 1
+30 a = k / k * k + k - k
+40 if (k < 1000) goto 20
+50 print a
+60 end
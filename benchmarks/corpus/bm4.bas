@@ -0,0 +1,7 @@
+// Rugg/Feldman BM4: BM3 with constants in the expression
+10 k = 0
+20 k = k + 1
+30 a = k / 2 * 3 + 4 - 5
+40 if (k < 1000) goto 20
+50 print a
+60 end
@@ -0,0 +1,11 @@
+// Rugg/Feldman BM5: BM4 plus a subroutine call. Without GOSUB/RETURN the
+// subroutine is entered and left with plain gotos
+10 k = 0
+20 k = k + 1
+30 a = k / 2 * 3 + 4 - 5
+40 goto 100
+50 if (k < 1000) goto 20
+60 print a
+70 end
+100 // subroutine
+110 goto 50
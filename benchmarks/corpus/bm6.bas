@@ -0,0 +1,13 @@
+// Rugg/Feldman BM6: BM5 plus an inner loop of five iterations
+10 k = 0
+20 k = k + 1
+30 a = k / 2 * 3 + 4 - 5
+40 goto 100
+50 l = 1
+60 l = l + 1
+70 if (l <= 5) goto 60
+80 if (k < 1000) goto 20
+90 print a
+95 end
+100 // subroutine
+110 goto 50
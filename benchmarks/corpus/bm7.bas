@@ -0,0 +1,15 @@
+// Rugg/Feldman BM7: BM6 with a store in the inner loop. The original stores
+// into an array; the dialect has none, so the store goes to a variable
+10 k = 0
+20 k = k + 1
+30 a = k / 2 * 3 + 4 - 5
+40 goto 100
+50 l = 1
+60 m = a
+70 l = l + 1
+80 if (l <= 5) goto 60
+90 if (k < 1000) goto 20
+92 print m
+95 end
+100 // subroutine
+110 goto 50
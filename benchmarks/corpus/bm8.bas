@@ -0,0 +1,14 @@
+// Rugg/Feldman BM8: power, logarithm and sine of the loop variable. The
+// dialect has no functions, so they become a product and short polynomials
+// in x = k / 1000 (log(1 + x) and sin(x) to their third term)
+10 k = 0
+20 k = k + 1
+30 x = k / 1000
+40 a = k * k
+50 b = x - x * x / 2 + x * x * x / 3
+60 c = x - x * x * x / 6 + x * x * x * x * x / 120
+70 if (k < 1000) goto 20
+80 print a
+90 print b
+95 print c
+99 end
@@ -0,0 +1,14 @@
+// The first 70 Fibonacci numbers, computed 20 times over
+10 k = 0
+20 a = 0
+30 b = 1
+40 i = 0
+50 t = a + b
+60 a = b
+70 b = t
+80 i = i + 1
+90 if (i < 70) goto 50
+100 print a
+110 k = k + 1
+120 if (k < 20) goto 20
+130 end
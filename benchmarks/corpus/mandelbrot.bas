@@ -0,0 +1,28 @@
+// ASCII Mandelbrot set, 30 columns by 21 rows. There are no strings, so each
+// row is printed as two numbers whose 15 digits are the escape iterations
+// (1-9) of its cells
+10 y = 0
+20 x = 0
+30 r = 0
+40 ci = y * 0.1 - 1
+50 cr = x * 0.085 - 2
+60 zr = 0
+70 zi = 0
+80 n = 0
+90 t = zr * zr - zi * zi + cr
+100 zi = 2 * zr * zi + ci
+110 zr = t
+120 n = n + 1
+130 if (n = 9) goto 150
+140 if (zr * zr + zi * zi < 4) goto 90
+150 r = r * 10 + n
+160 x = x + 1
+170 if (x = 15) goto 200
+180 if (x = 30) goto 200
+190 goto 50
+200 print r
+210 r = 0
+220 if (x < 30) goto 50
+230 y = y + 1
+240 if (y <= 20) goto 20
+250 end
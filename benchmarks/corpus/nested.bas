@@ -0,0 +1,14 @@
+// Three nested counting loops of 20 iterations each
+10 c = 0
+20 i = 0
+30 j = 0
+40 k = 0
+50 c = c + 1
+60 k = k + 1
+70 if (k < 20) goto 50
+80 j = j + 1
+90 if (j < 20) goto 40
+100 i = i + 1
+110 if (i < 20) goto 30
+120 print c
+130 end
@@ -0,0 +1,18 @@
+// Prime numbers below 200. Without arrays there is no sieve, so each
+// candidate is tested by trial division, done as repeated subtraction
+10 n = 2
+20 p = 0
+30 d = 2
+40 if (d * d > n) goto 100
+50 r = n
+60 r = r - d
+70 if (r >= d) goto 60
+80 if (r = 0) goto 120
+90 d = d + 1
+95 goto 40
+100 p = p + 1
+110 print n
+120 n = n + 1
+130 if (n < 200) goto 30
+140 print p
+150 end
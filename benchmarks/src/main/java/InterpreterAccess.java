@@ -0,0 +1,88 @@
+import benchmarks.Interpreter;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ *
+ * INTERPRETERACCESS.JAVA
+ *
+ * Gives the benchmarks, which JMH requires to be in a named package, access to
+ * the interpreter's classes and package-private methods in the unnamed package.
+ */
+
+public class InterpreterAccess implements Interpreter {
+    private static final OutputSink DISCARD = bytes -> bytes.position(bytes.limit());
+
+    private final Model model = new Model();
+    private Expression expression;
+    private Expression left;
+    private String source;
+    private Program program;
+
+    public InterpreterAccess() {
+        model.loadProgram("10 a = 3\n20 b = 4\n30 c = 5\n40 d = 6\n");
+        model.runProgram();
+        model.setOutputSink(DISCARD);
+    }
+
+    @Override
+    public void setTier(String tier) {
+        model.setTier(Tier.parse(tier));
+    }
+
+    @Override
+    public void setSuperinstructions(String profileFile) throws IOException {
+        model.setSuperinstructions(OpcodeProfile.load(Paths.get(profileFile)));
+    }
+
+    @Override
+    public void compileExpressions(String expression, String left) {
+        this.expression = model.compileExpression(expression);
+        this.left = model.compileExpression(left);
+    }
+
+    @Override
+    public double evaluate() {
+        return model.evaluate(expression);
+    }
+
+    @Override
+    public boolean evaluateCondition() {
+        return model.evaluateCondition(Opcode.IF_LT, left, expression);
+    }
+
+    @Override
+    public void setProgram(String source) {
+        this.source = source;
+        program = Parser.parse(source, new SymbolTable());
+    }
+
+    @Override
+    public Object parse() {
+        return Parser.parse(source, new SymbolTable());
+    }
+
+    @Override
+    public int indexOfLine(int lineNumber) {
+        return program.indexOfLine(lineNumber);
+    }
+
+    @Override
+    public long loadAndRun() {
+        model.loadProgram(source);
+        model.runProgram(ExecutionLimits.NONE);
+        return model.getStepCount();
+    }
+
+    @Override
+    public String loadAndRunForOutput() {
+        model.setOutputSink(null);
+        try {
+            model.loadProgram(source);
+            model.runProgram(ExecutionLimits.NONE);
+            return model.getOutput();
+        } finally {
+            model.setOutputSink(DISCARD);
+        }
+    }
+}
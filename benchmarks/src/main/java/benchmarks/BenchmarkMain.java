@@ -0,0 +1,25 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * BENCHMARKMAIN.JAVA
+ *
+ * Starts JMH with JSON results in jmh-result.json, so runs can be compared,
+ * unless another result format is given. All arguments are passed on to JMH,
+ * e.g. "java -jar benchmarks/target/benchmarks.jar ExpressionBenchmark".
+ */
+
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add(0, "json");
+            options.add(0, "-rf");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,121 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ *
+ * CORPUS.JAVA
+ *
+ * Runs the macro benchmark corpus: whole BASIC programs such as the Rugg/Feldman
+ * suite, primes, Mandelbrot and Fibonacci, in benchmarks/corpus. Each program is
+ * first run once with its output kept and checked against its golden file
+ * (name.out next to name.bas). It is then run repeatedly with its output
+ * discarded, first to warm up the JIT and then measured, each phase for at least
+ * the given time, and the harness reports instructions per second, nanoseconds per
+ * executed statement and bytes allocated per run.
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar benchmarks.Corpus [options] [dir]
+ *   --time ms     minimum time of the measured runs per program (default 2000)
+ *   --warmup ms   minimum time of the unmeasured runs before them (default 1000)
+ *   --update      write the golden files instead of checking them
+ *   --tier name   run the programs in another tier: closures, bytecode or
+ *                 tiered (default interpreter)
+ *   --superinstructions file
+ *                 use the superinstructions learnt from an opcode profile, such
+ *                 as one written by running the corpus with
+ *                 "java Main run name.bas --profile-opcodes file"
+ *
+ * The exit code is 1 if any output differs from its golden file, and 2 if the
+ * tier is unknown.
+ */
+
+public class Corpus {
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get("benchmarks", "corpus");
+        long time = 2000;
+        long warmup = 1000;
+        boolean update = false;
+        String tier = "interpreter";
+        String superinstructions = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--time": time = Long.parseLong(args[++i]); break;
+                case "--warmup": warmup = Long.parseLong(args[++i]); break;
+                case "--update": update = true; break;
+                case "--tier": tier = args[++i]; break;
+                case "--superinstructions": superinstructions = args[++i]; break;
+                default: dir = Paths.get(args[i]); break;
+            }
+        }
+
+        try {
+            Interpreter.create().setTier(tier); // Check the name before running anything
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+
+        List<Path> programs;
+        try (Stream<Path> files = Files.list(dir)) {
+            programs = files.filter(p -> p.toString().endsWith(".bas")).sorted().collect(Collectors.toList());
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        boolean failed = false;
+
+        System.out.printf("%-16s %8s %14s %12s %12s %16s%n", "program", "golden", "instructions", "instr/sec", "ns/stmt", "alloc bytes/run");
+        for (Path file : programs) {
+            String name = file.getFileName().toString().replace(".bas", "");
+            Interpreter interpreter = Interpreter.create();
+            interpreter.setTier(tier);
+            if (superinstructions != null) {
+                interpreter.setSuperinstructions(superinstructions);
+            }
+            interpreter.setProgram(Files.readString(file));
+
+            Path golden = file.resolveSibling(name + ".out");
+            String output = interpreter.loadAndRunForOutput();
+            String check;
+            if (update) {
+                Files.writeString(golden, output);
+                check = "written";
+            } else if (!Files.exists(golden)) {
+                check = "missing";
+                failed = true;
+            } else if (Files.readString(golden).equals(output)) {
+                check = "ok";
+            } else {
+                check = "DIFFERS";
+                failed = true;
+            }
+
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < warmup * 1_000_000L) {
+                interpreter.loadAndRun();
+            }
+            long runs = 0;
+            long steps = 0;
+            long elapsed;
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            start = System.nanoTime();
+            do {
+                steps += interpreter.loadAndRun();
+                runs++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < time * 1_000_000L);
+            allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+            System.out.printf("%-16s %8s %14d %12.0f %12.2f %16d%n", name, check, steps / runs,
+                    steps * 1e9 / elapsed, (double) elapsed / steps, allocated / runs);
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
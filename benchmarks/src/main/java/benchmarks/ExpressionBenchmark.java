@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * EXPRESSIONBENCHMARK.JAVA
+ *
+ * Measures Model.evaluate and Model.evaluateCondition on their own, with the
+ * kind of expressions ProgramC uses: constants and variables mixed with all four
+ * operators and parentheses. The condition compares "c + 5" with the expression.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+    @Param({"56 * (76 / c) / (56 + 6)", "c", "(a + b) * (c - d) / (a * b + c * d) - (a - b) / 2"})
+    public String expression;
+
+    private Interpreter interpreter;
+
+    @Setup
+    public void setUp() {
+        interpreter = Interpreter.create();
+        interpreter.compileExpressions(expression, "c + 5");
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return interpreter.evaluate();
+    }
+
+    @Benchmark
+    public boolean evaluateCondition() {
+        return interpreter.evaluateCondition();
+    }
+}
@@ -0,0 +1,115 @@
+package benchmarks;
+
+/**
+ *
+ * INTERPRETER.JAVA
+ *
+ * The interpreter's classes live in the unnamed package, which code in a named
+ * package such as this one cannot refer to, while JMH only accepts benchmarks in
+ * a named package. The benchmarks therefore drive the interpreter through this
+ * interface, implemented by InterpreterAccess in the unnamed package. Each
+ * benchmark creates its own instance, and the calls are monomorphic, so the JIT
+ * inlines them and they add nothing measurable.
+ */
+
+public interface Interpreter {
+
+/**
+ * Creates an interpreter with the variables a = 3, b = 4, c = 5 and d = 6.
+ *
+ * @return The interpreter.
+ */
+
+    static Interpreter create() {
+        try {
+            return (Interpreter) Class.forName("InterpreterAccess").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Interpreter classes not found", e);
+        }
+    }
+
+/**
+ * Chooses how programs are run.
+ *
+ * @param tier The name of a tier: interpreter, closures, bytecode or tiered.
+ * @throws IllegalArgumentException if there is no tier of that name.
+ */
+
+    void setTier(String tier);
+
+/**
+ * Makes the interpreter use the superinstructions learnt from an opcode profile
+ * in the programs it loads from now on.
+ *
+ * @param profileFile A file written by "java Main run --profile-opcodes".
+ * @throws java.io.IOException if the file cannot be read.
+ */
+
+    void setSuperinstructions(String profileFile) throws java.io.IOException;
+
+/**
+ * Compiles the expressions used by evaluate() and evaluateCondition().
+ *
+ * @param expression The expression to evaluate, and the right side of the condition.
+ * @param left The left side of the condition.
+ */
+
+    void compileExpressions(String expression, String left);
+
+/**
+ * Evaluates the expression compiled last, with Model.evaluate.
+ *
+ * @return The value of the expression.
+ */
+
+    double evaluate();
+
+/**
+ * Evaluates "left &lt; expression" with Model.evaluateCondition.
+ *
+ * @return Whether the condition holds.
+ */
+
+    boolean evaluateCondition();
+
+/**
+ * Sets the source used by parse(), indexOfLine() and loadAndRun(), and parses it.
+ *
+ * @param source The BASIC program.
+ */
+
+    void setProgram(String source);
+
+/**
+ * Parses the program into a new Program.
+ *
+ * @return The compiled program.
+ */
+
+    Object parse();
+
+/**
+ * Looks up an instruction of the parsed program with Program.indexOfLine.
+ *
+ * @param lineNumber The BASIC line number.
+ * @return The index of the instruction, or -1.
+ */
+
+    int indexOfLine(int lineNumber);
+
+/**
+ * Loads and runs the program without limits, discarding its output.
+ *
+ * @return The number of instructions executed.
+ */
+
+    long loadAndRun();
+
+/**
+ * Loads and runs the program without limits, keeping its output.
+ *
+ * @return The output of the program.
+ */
+
+    String loadAndRunForOutput();
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * LINELOOKUPBENCHMARK.JAVA
+ *
+ * Measures finding an instruction by its BASIC line number in large programs.
+ * Jumps are resolved when a program is loaded, so Program.indexOfLine is the
+ * lookup left to measure; parsing a large program measures the resolution of
+ * all its jumps at once.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineLookupBenchmark {
+    @Param({"1000", "100000"})
+    public int lines;
+
+    private Interpreter interpreter;
+    private int[] lineNumbers;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        StringBuilder code = new StringBuilder();
+        for (int i = 1; i <= lines; i++) {
+            code.append(i * 10).append(i % 2 == 0 ? " goto " + (i * 10 + 10) : " x = x + 1").append('\n');
+        }
+        code.append(lines * 10 + 10).append(" end\n");
+        interpreter = Interpreter.create();
+        interpreter.setProgram(code.toString());
+
+        Random random = new Random(42);
+        lineNumbers = new int[4096];
+        for (int i = 0; i < lineNumbers.length; i++) {
+            lineNumbers[i] = (random.nextInt(lines) + 1) * 10;
+        }
+    }
+
+    @Benchmark
+    public int indexOfLine() {
+        next = (next + 1) & (lineNumbers.length - 1);
+        return interpreter.indexOfLine(lineNumbers[next]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object parse() {
+        return interpreter.parse();
+    }
+}
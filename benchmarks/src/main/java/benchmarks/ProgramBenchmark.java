@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * PROGRAMBENCHMARK.JAVA
+ *
+ * Measures whole programs: loadProgram followed by runProgram on ProgramA, with
+ * its loop scaled up to the given number of iterations. Output is discarded by
+ * the sink, so the numbers cover parsing, dispatch, evaluation and formatting.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgramBenchmark {
+    @Param({"1000000"})
+    public int iterations;
+
+    private Interpreter interpreter;
+
+    @Setup
+    public void setUp() {
+        interpreter = Interpreter.create();
+        interpreter.setProgram(String.join("\n",
+                "10 i = 0",
+                "20 c = 0",
+                "40 print c",
+                "45 c = c + 5",
+                "70 print i",
+                "75 print c",
+                "78 if( i = " + iterations + " ) goto 90",
+                "82 i = i + 1",
+                "83 goto 45",
+                "90 d = c + i",
+                "95 print d",
+                "100 end"));
+    }
+
+    @Benchmark
+    public long loadAndRun() {
+        return interpreter.loadAndRun();
+    }
+}
@@ -0,0 +1,41 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * MODELALLOCATIONTEST.JAVA
+ *
+ * Checks that evaluating a compiled expression allocates nothing, measured with
+ * the allocation counter of the current thread around 10M evaluations of the
+ * expression in ProgramC.
+ */
+
+public class ModelAllocationTest {
+    private static final int ITERATIONS = 10_000_000;
+
+    @Test
+    public void evaluateDoesNotAllocate() {
+        Model model = new Model();
+        model.loadProgram("10 c = 5\n");
+        model.runProgram();
+        Expression expression = model.compileExpression("56 * (76 / c) / (56 + 6)");
+
+        double sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) { // Warm up, so the JIT compiles evaluate() first
+            sum += model.evaluate(expression);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            sum += model.evaluate(expression);
+        }
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+        assertEquals(2 * ITERATIONS * (56 * (76 / 5.0) / (56 + 6)), sum, 1e-3 * ITERATIONS);
+        assertEquals(0, allocated, "bytes allocated by " + ITERATIONS + " evaluations");
+    }
+}
@@ -0,0 +1,57 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * NUMBERFORMATTERTEST.JAVA
+ *
+ * Checks that NumberFormatter writes the same text as Double.toString, on random
+ * doubles and on dyadic fractions such as k + m / 1024, whose exact decimal
+ * expansion often ends in a 5 just past the shortest digits, so that the two
+ * candidates for those digits are equally close.
+ */
+
+public class NumberFormatterTest {
+    private static final int SAMPLES = 200_000;
+
+    @Test
+    public void tiesTakeTheEvenDigits() {
+        assertFormat(8396346 + 1 / 1024.0);
+        assertFormat(3814.8159790039062);
+        assertFormat(842.8860473632812);
+    }
+
+    @Test
+    public void dyadicFractionsMatchDoubleToString() {
+        Random random = new Random(1);
+        for (int bits = 1; bits <= 40; bits++) {
+            for (int i = 0; i < SAMPLES / 40; i++) {
+                double whole = Math.floor(Math.pow(10, random.nextDouble() * 10 - 3));
+                double fraction = (double) (random.nextLong() & ((1L << bits) - 1)) / (1L << bits);
+                assertFormat((whole + fraction) / (1 << random.nextInt(12)));
+            }
+        }
+        for (long k = 1 << 23; k < (1 << 23) + SAMPLES / 1024; k++) {
+            for (int m = 1; m < 1024; m += 2) {
+                assertFormat(k + m / 1024.0);
+            }
+        }
+    }
+
+    @Test
+    public void randomDoublesMatchDoubleToString() {
+        Random random = new Random(2);
+        for (int i = 0; i < SAMPLES; i++) {
+            assertFormat(Math.pow(10, random.nextDouble() * 12 - 4));
+            assertFormat(Double.longBitsToDouble(random.nextLong()));
+        }
+    }
+
+    private static void assertFormat(double value) {
+        byte[] target = new byte[NumberFormatter.MAX_LENGTH];
+        String text = new String(target, 0, NumberFormatter.format(value, false, target));
+        assertEquals(Double.toString(value), text);
+    }
+}
@@ -0,0 +1,50 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * TYPEINFERENCETEST.JAVA
+ *
+ * Checks that the analysis ends on programs whose ranges compute infinity minus
+ * infinity, and that the tiers compiled with its facts print what the
+ * interpreter prints.
+ */
+
+public class TypeInferenceTest {
+    private static final String INFINITY_MINUS_INFINITY = "10 b = 1 / 0\n20 b = b - 1 / 0\n30 goto 20\n";
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Test
+    public void analysisEndsWhenBoundsAreNaN() {
+        // Optimizing folds 1 / 0 into the constant infinity
+        Program program = Optimizer.optimize(Parser.parse(INFINITY_MINUS_INFINITY, new SymbolTable()));
+        TypeInference facts = assertTimeoutPreemptively(TIMEOUT, () -> TypeInference.analyze(program));
+        if (facts != null) {
+            int b = program.symbols.lookup("b");
+            TypeInference.Range range = facts.range(program.indexOfLine(30), b);
+            assertTrue(range.nan);
+            assertFalse(range.integer);
+        }
+    }
+
+    @Test
+    public void everyTierStopsAtTheStepLimit() {
+        String expected = run(Tier.INTERPRETER);
+        assertEquals(expected, assertTimeoutPreemptively(TIMEOUT, () -> run(Tier.CLOSURES)));
+        assertEquals(expected, assertTimeoutPreemptively(TIMEOUT, () -> run(Tier.BYTECODE)));
+        assertEquals(expected, assertTimeoutPreemptively(TIMEOUT, () -> run(Tier.TIERED)));
+    }
+
+    private static String run(int tier) {
+        Model model = new Model();
+        model.setTier(tier);
+        model.loadProgram(INFINITY_MINUS_INFINITY);
+        model.runProgram(new ExecutionLimits(20, ExecutionLimits.UNLIMITED, ExecutionLimits.UNLIMITED));
+        return model.getOutput();
+    }
+}